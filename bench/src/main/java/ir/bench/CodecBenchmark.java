@@ -0,0 +1,105 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir.bench;
+
+import ir.Codecs;
+import ir.PostingsCodec;
+import ir.PostingsList;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *   Measures encoding and decoding every postings list of a synthetic
+ *   corpus with each postings codec.
+ *
+ *   The setup prints the bytes per posting of the codec, as the
+ *   size of the encoded lists is the other half of the trade-off.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class CodecBenchmark {
+
+    @Param( { "varint", "pfordelta", "eliasfano" } )
+    public String codec;
+
+    @Param( { "50000" } )
+    public int vocabulary;
+
+    @Param( { "1.0" } )
+    public double skew;
+
+    @Param( { "20000" } )
+    public int documents;
+
+    @Param( { "300" } )
+    public int documentLength;
+
+    private PostingsCodec postingsCodec;
+    private PostingsList[] lists;
+    private byte[][] encoded;
+
+
+    @Setup
+    public void setup() {
+    	for ( PostingsCodec c : Codecs.all() ) {
+    		if ( c.getName().equals( codec )) {
+    			postingsCodec = c;
+    		}
+    	}
+    	if ( postingsCodec == null ) {
+    		throw new IllegalArgumentException( "Unknown postings codec " + codec );
+    	}
+    	ZipfCorpus zipf = new ZipfCorpus( vocabulary, skew, 42 );
+    	PostingsList[] byRank = new PostingsList[vocabulary];
+    	for ( int d=0; d<documents; d++ ) {
+    		for ( int pos=0; pos<documentLength; pos++ ) {
+    			int r = zipf.nextRank();
+    			if ( byRank[r] == null ) {
+    				byRank[r] = new PostingsList();
+    			}
+    			byRank[r].add( d, pos );
+    		}
+    	}
+    	ArrayList<PostingsList> used = new ArrayList<PostingsList>();
+    	for ( PostingsList pl : byRank ) {
+    		if ( pl != null ) {
+    			used.add( pl );
+    		}
+    	}
+    	lists = used.toArray( new PostingsList[used.size()] );
+    	encoded = encode();
+    	long postings = 0, bytes = 0;
+    	for ( int i=0; i<lists.length; i++ ) {
+    		postings += lists[i].size();
+    		bytes += encoded[i].length;
+    	}
+    	System.out.printf( "%n%s: %d lists, %.2f bytes/posting%n", codec, lists.length, (double)bytes / postings );
+    }
+
+    @Benchmark
+    public byte[][] encode() {
+    	byte[][] result = new byte[lists.length][];
+    	for ( int i=0; i<lists.length; i++ ) {
+    		result[i] = lists[i].encode( postingsCodec );
+    	}
+    	return result;
+    }
+
+    @Benchmark
+    public long decode() {
+    	long postings = 0;
+    	for ( int i=0; i<lists.length; i++ ) {
+    		postings += PostingsList.decode( encoded[i], 0, lists[i].size(), postingsCodec ).size();
+    	}
+    	return postings;
+    }
+}
@@ -0,0 +1,62 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir.bench;
+
+import ir.HashedIndex;
+import ir.Index;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *   Measures HashedIndex.insert by indexing a whole synthetic
+ *   corpus into a new index.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class IndexBenchmark {
+
+    @Param( { "10000", "100000" } )
+    public int vocabulary;
+
+    @Param( { "1.0" } )
+    public double skew;
+
+    @Param( { "2000" } )
+    public int documents;
+
+    @Param( { "200" } )
+    public int documentLength;
+
+    private String[][] corpus;
+
+
+    @Setup
+    public void setup() {
+    	ZipfCorpus zipf = new ZipfCorpus( vocabulary, skew, 42 );
+    	corpus = new String[documents][];
+    	for ( int d=0; d<documents; d++ ) {
+    		corpus[d] = zipf.nextDocument( documentLength );
+    	}
+    }
+
+    @Benchmark
+    public Index insert() {
+    	HashedIndex index = new HashedIndex();
+    	for ( int d=0; d<corpus.length; d++ ) {
+    		String[] doc = corpus[d];
+    		for ( int pos=0; pos<doc.length; pos++ ) {
+    			index.insert( doc[pos], d, pos );
+    		}
+    		index.finishDocument( d, doc.length );
+    	}
+    	return index;
+    }
+}
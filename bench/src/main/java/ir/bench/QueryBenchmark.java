@@ -0,0 +1,141 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir.bench;
+
+import ir.HashedIndex;
+import ir.Index;
+import ir.Indexer;
+import ir.PostingsList;
+import ir.Query;
+import ir.Searcher;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *   Measures every query type on an index of a synthetic corpus.
+ *
+ *   Each invocation runs the next query of a fixed set. Intersection
+ *   and ranked queries pair a frequent word with a rarer one, which is
+ *   the case skipping and MaxScore are meant for. Phrase queries are
+ *   taken from the documents, so they always have matches, and are
+ *   run both on the positions of their words and on their biwords.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class QueryBenchmark {
+
+    @Param( { "10000", "100000" } )
+    public int vocabulary;
+
+    @Param( { "1.0" } )
+    public double skew;
+
+    @Param( { "10000" } )
+    public int documents;
+
+    @Param( { "200" } )
+    public int documentLength;
+
+    private static final int QUERIES = 64;
+
+    /** Number of results marked as relevant in relevance feedback. */
+    private static final int RELEVANT = 3;
+
+    private Indexer indexer;
+    private Searcher searcher;
+    private Query[] queries = new Query[QUERIES];
+    private Query[] phrases = new Query[QUERIES];
+    private Query[] pairs = new Query[QUERIES];
+    private PostingsList[] results = new PostingsList[QUERIES];
+    private boolean[] relevant = new boolean[RELEVANT];
+    private int next = 0;
+
+
+    @Setup
+    public void setup() {
+    	ZipfCorpus zipf = new ZipfCorpus( vocabulary, skew, 42 );
+    	HashedIndex.CREATE_BIWORDS = true;
+    	HashedIndex index = new HashedIndex();
+    	String[][] corpus = new String[documents][];
+    	for ( int d=0; d<documents; d++ ) {
+    		corpus[d] = zipf.nextDocument( documentLength );
+    		for ( int pos=0; pos<documentLength; pos++ ) {
+    			index.insert( corpus[d][pos], d, pos );
+    		}
+    		index.getDocuments().add( d, "doc" + d );
+    		index.finishDocument( d, documentLength );
+    	}
+    	indexer = new Indexer();
+    	indexer.index = index;
+    	searcher = new Searcher( index );
+
+    	Random random = new Random( 7 );
+    	for ( int q=0; q<QUERIES; q++ ) {
+    		queries[q] = new Query( zipf.word( random.nextInt( 10 )) + " " + zipf.word( 10 + random.nextInt( 1000 )));
+    		String[] doc = corpus[random.nextInt( documents )];
+    		int start = random.nextInt( documentLength - 2 );
+    		phrases[q] = new Query( doc[start] + " " + doc[start+1] + " " + doc[start+2] );
+    		pairs[q] = new Query( doc[start] + " " + doc[start+1] );
+    		results[q] = searcher.rankedQuery( queries[q] );
+    	}
+    	Arrays.fill( relevant, true );
+    }
+
+    private int nextQuery() {
+    	next = (next + 1) % QUERIES;
+    	return next;
+    }
+
+    @Benchmark
+    public PostingsList intersectQuery() {
+    	return searcher.intersectQuery( queries[nextQuery()] );
+    }
+
+    @Benchmark
+    public PostingsList phraseQuery() {
+    	return searcher.phraseQuery( phrases[nextQuery()] );
+    }
+
+    @Benchmark
+    public PostingsList phraseQueryPair() {
+    	return searcher.phraseQuery( pairs[nextQuery()] );
+    }
+
+    @Benchmark
+    public PostingsList biwordPhraseQuery() {
+    	return searcher.biwordPhraseQuery( phrases[nextQuery()] );
+    }
+
+    @Benchmark
+    public PostingsList biwordPhraseQueryPair() {
+    	return searcher.biwordPhraseQuery( pairs[nextQuery()] );
+    }
+
+    @Benchmark
+    public PostingsList rankedQuery() {
+    	return searcher.rankedQuery( queries[nextQuery()] );
+    }
+
+    @Benchmark
+    public PostingsList rankedQueryTop10() {
+    	return searcher.maxScoreQuery( queries[nextQuery()], 10 );
+    }
+
+    @Benchmark
+    public Query relevanceFeedback() {
+    	int q = nextQuery();
+    	Query query = queries[q].copy();
+    	query.relevanceFeedback( results[q], relevant, indexer );
+    	return query;
+    }
+}
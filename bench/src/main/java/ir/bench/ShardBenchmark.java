@@ -0,0 +1,101 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir.bench;
+
+import ir.Index;
+import ir.IndexSnapshot;
+import ir.PostingsList;
+import ir.Query;
+import ir.SegmentedIndex;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ *   Measures queries on a SegmentedIndex split into a number of
+ *   shards, which the IndexSnapshot searches in parallel.
+ *
+ *   All documents are flushed before measuring, so every shard is one
+ *   segment and the queries are the same as in QueryBenchmark.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ShardBenchmark {
+
+    @Param( { "1", "2", "4", "8" } )
+    public int shards;
+
+    @Param( { "100000" } )
+    public int vocabulary;
+
+    @Param( { "1.0" } )
+    public double skew;
+
+    @Param( { "100000" } )
+    public int documents;
+
+    @Param( { "200" } )
+    public int documentLength;
+
+    private static final int QUERIES = 64;
+
+    private IndexSnapshot snapshot;
+    private Query[] queries = new Query[QUERIES];
+    private Query[] phrases = new Query[QUERIES];
+    private int next = 0;
+
+
+    @Setup
+    public void setup() {
+    	ZipfCorpus zipf = new ZipfCorpus( vocabulary, skew, 42 );
+    	SegmentedIndex.FLUSH_DOCUMENTS = Integer.MAX_VALUE;
+    	SegmentedIndex index = new SegmentedIndex( shards );
+    	Random random = new Random( 7 );
+    	for ( int d=0; d<documents; d++ ) {
+    		String[] doc = zipf.nextDocument( documentLength );
+    		for ( int pos=0; pos<documentLength; pos++ ) {
+    			index.insert( doc[pos], d, pos );
+    		}
+    		index.getDocuments().add( d, "doc" + d );
+    		index.finishDocument( d, documentLength );
+    		if ( d % (documents / QUERIES) == 0 && next < QUERIES ) {
+    			int start = random.nextInt( documentLength - 2 );
+    			phrases[next++] = new Query( doc[start] + " " + doc[start+1] + " " + doc[start+2] );
+    		}
+    	}
+    	index.flush();
+    	snapshot = index.getSnapshot();
+    	for ( int q=0; q<QUERIES; q++ ) {
+    		queries[q] = new Query( zipf.word( random.nextInt( 10 )) + " " + zipf.word( 10 + random.nextInt( 1000 )));
+    	}
+    	next = 0;
+    }
+
+    private int nextQuery() {
+    	next = (next + 1) % QUERIES;
+    	return next;
+    }
+
+    @Benchmark
+    public PostingsList intersectQuery() {
+    	return snapshot.search( queries[nextQuery()], Index.INTERSECTION_QUERY, Index.TF_IDF, Index.UNIGRAM );
+    }
+
+    @Benchmark
+    public PostingsList phraseQuery() {
+    	return snapshot.search( phrases[nextQuery()], Index.PHRASE_QUERY, Index.TF_IDF, Index.UNIGRAM );
+    }
+
+    @Benchmark
+    public PostingsList rankedQueryTop10() {
+    	return snapshot.search( queries[nextQuery()], Index.RANKED_QUERY, Index.TF_IDF, Index.UNIGRAM, 10 );
+    }
+}
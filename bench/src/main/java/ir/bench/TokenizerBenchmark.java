@@ -0,0 +1,65 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir.bench;
+
+import ir.SimpleTokenizer;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ *   Measures how fast SimpleTokenizer splits text into tokens.
+ *   SimpleTokenizer.readToken is private, so it is driven through
+ *   nextToken, which makes a String of each token, and nextTerm,
+ *   which does not.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class TokenizerBenchmark {
+
+    @Param( { "10000", "100000" } )
+    public int vocabulary;
+
+    @Param( { "1.0" } )
+    public double skew;
+
+    /** Number of words in the text. */
+    @Param( { "100000" } )
+    public int words;
+
+    private String text;
+
+
+    @Setup
+    public void setup() {
+    	text = new ZipfCorpus( vocabulary, skew, 42 ).nextText( words );
+    }
+
+    @Benchmark
+    public void tokenize( Blackhole bh ) throws IOException {
+    	SimpleTokenizer tok = new SimpleTokenizer( new StringReader( text ));
+    	while ( tok.hasMoreTokens() ) {
+    		bh.consume( tok.nextToken() );
+    	}
+    }
+
+    @Benchmark
+    public int tokenizeTerms() throws IOException {
+    	SimpleTokenizer tok = new SimpleTokenizer( new StringReader( text ));
+    	int chars = 0;
+    	while ( tok.nextTerm() ) {
+    		chars += tok.getTermLength();
+    	}
+    	return chars;
+    }
+}
@@ -0,0 +1,83 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ *   Generates synthetic documents whose words are drawn from a Zipf
+ *   distribution: the word of rank r occurs with probability
+ *   proportional to 1 / r^skew. The words are "w0", "w1", ... in
+ *   order of decreasing frequency, and the same seed always gives
+ *   the same documents.
+ */
+public class ZipfCorpus {
+
+    /** The words, most frequent first. */
+    private final String[] words;
+
+    /** cumulative[r] is the summed weight of the words of rank <= r. */
+    private final double[] cumulative;
+
+    private final Random random;
+
+
+    public ZipfCorpus( int vocabulary, double skew, long seed ) {
+    	words = new String[vocabulary];
+    	cumulative = new double[vocabulary];
+    	double sum = 0;
+    	for ( int r=0; r<vocabulary; r++ ) {
+    		words[r] = "w" + r;
+    		sum += 1.0 / Math.pow( r+1, skew );
+    		cumulative[r] = sum;
+    	}
+    	random = new Random( seed );
+    }
+
+    /**  The word of rank r  */
+    public String word( int r ) {
+    	return words[r];
+    }
+
+    public int vocabulary() {
+    	return words.length;
+    }
+
+    /**
+     *  Returns the rank of a random word.
+     */
+    public int nextRank() {
+    	double x = random.nextDouble() * cumulative[cumulative.length-1];
+    	int r = Arrays.binarySearch( cumulative, x );
+    	return r < 0 ? Math.min( -r-1, cumulative.length-1 ) : r;
+    }
+
+    /**
+     *  Returns a document of @code{length} random words.
+     */
+    public String[] nextDocument( int length ) {
+    	String[] doc = new String[length];
+    	for ( int i=0; i<length; i++ ) {
+    		doc[i] = words[nextRank()];
+    	}
+    	return doc;
+    }
+
+    /**
+     *  Returns @code{length} random words as text, separated by
+     *  spaces and punctuation the tokenizer has to skip.
+     */
+    public String nextText( int length ) {
+    	StringBuilder sb = new StringBuilder();
+    	for ( int i=0; i<length; i++ ) {
+    		sb.append( words[nextRank()] );
+    		sb.append( i % 12 == 11 ? ". " : " " );
+    	}
+    	return sb.toString();
+    }
+}
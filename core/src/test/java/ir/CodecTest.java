@@ -0,0 +1,124 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ *   Round trips through every postings codec, both of plain increasing
+ *   values and of whole postings lists.
+ */
+public class CodecTest {
+
+    private static int[] roundTrip( PostingsCodec codec, int[] values ) {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	codec.encode( values, 0, values.length, out );
+    	byte[] encoded = out.toByteArray();
+    	int[] decoded = new int[values.length];
+    	int end = codec.decode( encoded, 0, decoded, 0, values.length );
+    	assertEquals( encoded.length, end, codec.getName() + " did not decode all its bytes" );
+    	return decoded;
+    }
+
+    private static int[] increasing( Random random, int n, int maxGap ) {
+    	int[] values = new int[n];
+    	int v = 0;
+    	for ( int i=0; i<n; i++ ) {
+    		v += random.nextInt( maxGap );
+    		values[i] = v;
+    	}
+    	return values;
+    }
+
+    @Test
+    public void emptyAndSingleValues() {
+    	for ( PostingsCodec codec : Codecs.all() ) {
+    		assertArrayEquals( new int[0], roundTrip( codec, new int[0] ), codec.getName() );
+    		assertArrayEquals( new int[] { 0 }, roundTrip( codec, new int[] { 0 } ), codec.getName() );
+    		assertArrayEquals( new int[] { 1 << 30 }, roundTrip( codec, new int[] { 1 << 30 } ), codec.getName() );
+    	}
+    }
+
+    @Test
+    public void increasingValues() {
+    	Random random = new Random( 1 );
+    	for ( PostingsCodec codec : Codecs.all() ) {
+    		// Sizes around the PForDelta block size, with small and large gaps
+    		for ( int n : new int[] { 2, 127, 128, 129, 1000 } ) {
+    			for ( int maxGap : new int[] { 1, 2, 100, 1 << 20 } ) {
+    				int[] values = increasing( random, n, maxGap );
+    				assertArrayEquals( values, roundTrip( codec, values ), codec.getName() + " n=" + n + " gap=" + maxGap );
+    			}
+    		}
+    	}
+    }
+
+    @Test
+    public void fewLargeGaps() {
+    	// Mostly dense values with a few large jumps, the PForDelta exceptions
+    	int[] values = new int[300];
+    	for ( int i=1; i<values.length; i++ ) {
+    		values[i] = values[i-1] + ( i % 50 == 0 ? 1 << 24 : 1 );
+    	}
+    	for ( PostingsCodec codec : Codecs.all() ) {
+    		assertArrayEquals( values, roundTrip( codec, values ), codec.getName() );
+    	}
+    }
+
+    @Test
+    public void valuesAtOffset() {
+    	int[] values = { 99, 99, 3, 7, 8, 1000 };
+    	for ( PostingsCodec codec : Codecs.all() ) {
+    		ByteArrayOutputStream out = new ByteArrayOutputStream();
+    		codec.encode( values, 2, 4, out );
+    		int[] decoded = new int[6];
+    		codec.decode( out.toByteArray(), 0, decoded, 2, 4 );
+    		assertArrayEquals( new int[] { 0, 0, 3, 7, 8, 1000 }, decoded, codec.getName() );
+    	}
+    }
+
+    @Test
+    public void postingsLists() {
+    	Random random = new Random( 2 );
+    	PostingsList[] lists = new PostingsList[4];
+    	lists[0] = new PostingsList();
+    	lists[1] = new PostingsList();
+    	lists[1].add( 5, 17 );
+    	lists[2] = new PostingsList();
+    	lists[3] = new PostingsList();
+    	for ( int d=0; d<2000; d++ ) {
+    		if ( random.nextInt( 3 ) == 0 ) {
+    			lists[2].add( d * 1000, 0 );
+    		}
+    		// Some documents with many positions
+    		int tf = d % 100 == 0 ? 500 : 1 + random.nextInt( 5 );
+    		int pos = 0;
+    		for ( int i=0; i<tf; i++ ) {
+    			pos += 1 + random.nextInt( 40 );
+    			lists[3].add( d, pos );
+    		}
+    	}
+    	for ( PostingsCodec codec : Codecs.all() ) {
+    		for ( PostingsList pl : lists ) {
+    			byte[] encoded = pl.encode( codec );
+    			assertSamePostings( pl, PostingsList.decode( encoded, 0, pl.size(), codec ), codec.getName() );
+    		}
+    	}
+    }
+
+    static void assertSamePostings( PostingsList expected, PostingsList actual, String message ) {
+    	assertEquals( expected.size(), actual.size(), message );
+    	for ( int i=0; i<expected.size(); i++ ) {
+    		assertEquals( expected.getDocID( i ), actual.getDocID( i ), message );
+    		assertArrayEquals( expected.get( i ).getPositions(), actual.get( i ).getPositions(), message );
+    	}
+    }
+}
@@ -0,0 +1,138 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.TreeSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ *   Writes an index with SegmentWriter and checks that DiskIndex reads
+ *   back the same terms, postings and documents.
+ */
+public class SegmentTest {
+
+    private static final String[][] DOCUMENTS = {
+    	{ "new", "york", "times" },
+    	{ "new", "york", "new", "york" },
+    	{ "the", "times", "of", "london" },
+    	{ "york" },
+    };
+
+    @TempDir
+    File dir;
+
+    private boolean biwords = HashedIndex.CREATE_BIWORDS;
+
+    @AfterEach
+    public void restoreBiwords() {
+    	HashedIndex.CREATE_BIWORDS = biwords;
+    }
+
+    private static HashedIndex build() {
+    	HashedIndex index = new HashedIndex();
+    	for ( int d=0; d<DOCUMENTS.length; d++ ) {
+    		for ( int pos=0; pos<DOCUMENTS[d].length; pos++ ) {
+    			index.insert( DOCUMENTS[d][pos], d, pos );
+    		}
+    		index.getDocuments().add( d, "doc" + d + ".pdf" );
+    		index.finishDocument( d, DOCUMENTS[d].length );
+    	}
+    	return index;
+    }
+
+    private static TreeSet<String> terms( Index index ) {
+    	TreeSet<String> terms = new TreeSet<String>();
+    	Iterator<String> it = index.getDictionary();
+    	while ( it.hasNext() ) {
+    		terms.add( it.next() );
+    	}
+    	return terms;
+    }
+
+    private static void assertSameIndex( Index expected, DiskIndex actual ) {
+    	assertEquals( terms( expected ), terms( actual ));
+    	for ( String term : terms( expected )) {
+    		CodecTest.assertSamePostings( expected.getPostings( term ), actual.getPostings( term ), term );
+    	}
+    	assertNull( actual.getPostings( "missing" ));
+    	for ( int d=0; d<DOCUMENTS.length; d++ ) {
+    		assertEquals( expected.getDocuments().getPath( d ), actual.getDocuments().getPath( d ));
+    		assertEquals( expected.getDocuments().getLength( d ), actual.getDocuments().getLength( d ));
+    		assertEquals( expected.getDocument( d ), actual.getDocument( d ));
+    	}
+    	assertNull( actual.getDocument( DOCUMENTS.length ));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+    	HashedIndex.CREATE_BIWORDS = false;
+    	HashedIndex index = build();
+    	SegmentWriter.write( index, dir );
+    	assertTrue( DiskIndex.exists( dir ));
+    	DiskIndex saved = new DiskIndex( dir );
+    	assertFalse( saved.hasBiwords() );
+    	assertSameIndex( index, saved );
+    }
+
+    @Test
+    public void roundTripWithBiwords() throws IOException {
+    	HashedIndex.CREATE_BIWORDS = true;
+    	HashedIndex index = build();
+    	SegmentWriter.write( index, dir );
+    	DiskIndex saved = new DiskIndex( dir );
+    	assertTrue( saved.hasBiwords() );
+    	assertSameIndex( index, saved );
+    	assertEquals( 2, saved.getPostings( "new york" ).size() );
+    }
+
+    @Test
+    public void everyCodec() throws IOException {
+    	HashedIndex.CREATE_BIWORDS = false;
+    	PostingsCodec codec = SegmentWriter.codec;
+    	try {
+    		for ( PostingsCodec c : Codecs.all() ) {
+    			SegmentWriter.codec = c;
+    			File segment = new File( dir, c.getName() );
+    			HashedIndex index = build();
+    			SegmentWriter.write( index, segment );
+    			assertSameIndex( index, new DiskIndex( segment ));
+    		}
+    	}
+    	finally {
+    		SegmentWriter.codec = codec;
+    	}
+    }
+
+    @Test
+    public void saveCommitsNewGeneration() throws IOException {
+    	HashedIndex.CREATE_BIWORDS = false;
+    	assertFalse( DiskIndex.exists( dir ));
+    	assertEquals( -1, SegmentWriter.committedGeneration( dir ));
+    	HashedIndex index = build();
+    	SegmentWriter.write( index, dir );
+    	long first = SegmentWriter.committedGeneration( dir );
+    	index.delete( 1 );
+    	SegmentWriter.write( index, dir );
+    	long second = SegmentWriter.committedGeneration( dir );
+    	assertTrue( second > first );
+    	// The previous generation is kept for readers that still have it open
+    	assertTrue( SegmentWriter.generationDir( dir, first ).exists() );
+    	SegmentWriter.write( index, dir );
+    	assertFalse( SegmentWriter.generationDir( dir, first ).exists() );
+    	assertTrue( SegmentWriter.generationDir( dir, second ).exists() );
+    	DiskIndex saved = new DiskIndex( dir );
+    	assertNull( saved.getDocuments().getPath( 1 ));
+    	assertEquals( 1, saved.getPostings( "new" ).size() );
+    }
+}
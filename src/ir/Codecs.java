@@ -0,0 +1,119 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *   Looks up PostingsCodecs by id, and holds the bit level helpers
+ *   they share.
+ */
+public class Codecs {
+
+    private static final PostingsCodec[] CODECS = {
+    	new VarIntCodec(), new PForDeltaCodec(), new EliasFanoCodec()
+    };
+
+    /**
+     *  Returns the codec with the given id.
+     */
+    public static PostingsCodec forId( int id ) {
+    	if ( id < 0 || id >= CODECS.length ) {
+    		throw new IllegalArgumentException( "Unknown postings codec " + id );
+    	}
+    	return CODECS[id];
+    }
+
+    /**
+     *  Returns all codecs.
+     */
+    public static PostingsCodec[] all() {
+    	return CODECS.clone();
+    }
+
+    /**
+     *  Writes a non-negative int 7 bits at a time, low bits first. The
+     *  high bit of each byte is set if more bytes follow.
+     */
+    public static void writeVarInt( int v, ByteArrayOutputStream out ) {
+    	while (( v & ~0x7F ) != 0 ) {
+    		out.write(( v & 0x7F ) | 0x80 );
+    		v >>>= 7;
+    	}
+    	out.write( v );
+    }
+
+    /**
+     *  Reads a varint at in[pos[0]] and advances pos[0] past it.
+     */
+    public static int readVarInt( byte[] in, int[] pos ) {
+    	int p = pos[0];
+    	int v = 0;
+    	int shift = 0;
+    	byte b;
+    	do {
+    		b = in[p++];
+    		v |= ( b & 0x7F ) << shift;
+    		shift += 7;
+    	} while ( b < 0 );
+    	pos[0] = p;
+    	return v;
+    }
+
+    /**
+     *  Packs the low @code{bits} bits of n values into @code{out}, starting
+     *  at bit @code{bitPos}, least significant bit first.
+     */
+    public static void pack( int[] values, int offset, int n, int bits, byte[] out, long bitPos ) {
+    	if ( bits == 0 ) {
+    		return;
+    	}
+    	long mask = ( 1L << bits ) - 1;
+    	for ( int i=0; i<n; i++ ) {
+    		long v = values[offset+i] & mask;
+    		long p = bitPos + (long) i * bits;
+    		int b = (int) ( p >>> 3 );
+    		v <<= ( p & 7 );
+    		while ( v != 0 ) {
+    			out[b++] |= (byte) v;
+    			v >>>= 8;
+    		}
+    	}
+    }
+
+    /**
+     *  Unpacks n values of @code{bits} bits each, written by pack(),
+     *  into values[offset] .. values[offset+n-1].
+     */
+    public static void unpack( byte[] in, long bitPos, int bits, int[] values, int offset, int n ) {
+    	if ( bits == 0 ) {
+    		for ( int i=0; i<n; i++ ) {
+    			values[offset+i] = 0;
+    		}
+    		return;
+    	}
+    	long mask = ( 1L << bits ) - 1;
+    	for ( int i=0; i<n; i++ ) {
+    		long p = bitPos + (long) i * bits;
+    		int b = (int) ( p >>> 3 );
+    		int shift = (int) ( p & 7 );
+    		long v = 0;
+    		int need = shift + bits;
+    		for ( int k=0; k*8 < need; k++ ) {
+    			v |= ( in[b+k] & 0xFFL ) << ( 8*k );
+    		}
+    		values[offset+i] = (int) (( v >>> shift ) & mask );
+    	}
+    }
+
+    /**
+     *  Number of bits needed to represent v.
+     */
+    public static int bitWidth( int v ) {
+    	return 32 - Integer.numberOfLeadingZeros( v );
+    }
+}
@@ -0,0 +1,320 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ *   A read-only index served from a segment written by SegmentWriter.
+ *
+ *   The term dictionary, the postings and the document vectors are
+ *   memory mapped, and a PostingsList is only decoded when getPostings()
+ *   asks for it. Only the document tables are read onto the heap.
+ */
+public class DiskIndex implements Index {
+
+    /** The mapped term dictionary and postings. */
+    private final MappedFile terms;
+    private final MappedFile postings;
+
+    /** Number of terms in the dictionary. */
+    private final int termCount;
+
+    /** The mapped document vectors, or null for a segment saved without them. */
+    private final MappedFile forward;
+
+    /** Number of documents in forward.dat. */
+    private final int forwardCount;
+
+    /** The flags of the segment, see SegmentWriter. */
+    private final int flags;
+
+    /** The paths and lengths from docs.dat. */
+    private final DocumentStore documents = new DocumentStore();
+
+    /** Document lengths and norms from docs.dat, idf from the term entries. */
+    private final RankingStatistics stats = new RankingStatistics( this );
+
+    /** The codec the postings were written with. */
+    private final PostingsCodec codec;
+
+
+    /**
+     *  Opens the segment in @code{dir}, the generation that was committed
+     *  last.
+     */
+    public DiskIndex( File dir ) throws IOException {
+    	long generation = SegmentWriter.committedGeneration( dir );
+    	// A segment saved before there were generations has its files in dir itself
+    	if ( generation >= 0 ) {
+    		dir = SegmentWriter.generationDir( dir, generation );
+    	}
+    	terms = new MappedFile( new File( dir, SegmentWriter.TERMS_FILE ));
+    	if ( terms.length() < SegmentWriter.TERMS_HEADER || terms.getInt( 0 ) != SegmentWriter.MAGIC
+    		 || terms.getInt( 4 ) != SegmentWriter.VERSION ) {
+    		throw new IOException( "Not a segment: " + dir );
+    	}
+    	codec = Codecs.forId( terms.getInt( 8 ));
+    	termCount = terms.getInt( 12 );
+    	flags = terms.getInt( 16 );
+    	postings = new MappedFile( new File( dir, SegmentWriter.POSTINGS_FILE ));
+    	readDocs( new File( dir, SegmentWriter.DOCS_FILE ));
+    	File f = new File( dir, SegmentWriter.FORWARD_FILE );
+    	if ( f.isFile() ) {
+    		forward = new MappedFile( f );
+    		if ( forward.length() < SegmentWriter.FORWARD_HEADER || forward.getInt( 0 ) != SegmentWriter.MAGIC
+    			 || forward.getInt( 4 ) != SegmentWriter.VERSION ) {
+    			throw new IOException( "Not a forward file: " + f );
+    		}
+    		forwardCount = forward.getInt( 8 );
+    	}
+    	else {
+    		forward = null;
+    		forwardCount = 0;
+    	}
+    }
+
+    /**
+     *  Returns true if @code{dir} holds a segment.
+     */
+    public static boolean exists( File dir ) {
+    	return new File( dir, SegmentWriter.COMMIT_FILE ).isFile()
+    		|| ( new File( dir, SegmentWriter.TERMS_FILE ).isFile()
+    			 && new File( dir, SegmentWriter.POSTINGS_FILE ).isFile()
+    			 && new File( dir, SegmentWriter.DOCS_FILE ).isFile() );
+    }
+
+    /**
+     *  Reads the document table into the document store and the
+     *  ranking statistics.
+     */
+    private void readDocs( File f ) throws IOException {
+    	try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( f )))) {
+    		if ( in.readInt() != SegmentWriter.MAGIC || in.readInt() != SegmentWriter.VERSION ) {
+    			throw new IOException( "Not a document table: " + f );
+    		}
+    		int n = in.readInt();
+    		for ( int i=0; i<n; i++ ) {
+    			int docID = in.readInt();
+    			int length = in.readInt();
+    			stats.addDocument( docID, length, in.readFloat() );
+    			documents.add( docID, in.readUTF() );
+    			documents.setLength( docID, length );
+    		}
+    	}
+    }
+
+    /**  A segment cannot be changed.  */
+    public void insert( String token, int docID, int offset ) {
+    	throw new UnsupportedOperationException( "DiskIndex is read-only" );
+    }
+
+    /**  A segment cannot be changed.  */
+    public void insert( int termID, int docID, int offset ) {
+    	throw new UnsupportedOperationException( "DiskIndex is read-only" );
+    }
+
+    /**  A segment cannot be changed, so it has no dictionary to add terms to.  */
+    public TermDictionary getTermDictionary() {
+    	throw new UnsupportedOperationException( "DiskIndex is read-only" );
+    }
+
+    /**  A segment cannot be changed.  */
+    public void finishDocument( int docID, int length ) {
+    	throw new UnsupportedOperationException( "DiskIndex is read-only" );
+    }
+
+    /**  Segments hold no deleted documents, they are dropped when written.  */
+    public void delete( int docID ) {
+    	throw new UnsupportedOperationException( "DiskIndex is read-only" );
+    }
+
+    public boolean isDeleted( int docID ) {
+    	return false;
+    }
+
+    /**  True if the segment was written with the biwords of all its documents.  */
+    public boolean hasBiwords() {
+    	return ( flags & SegmentWriter.FLAG_BIWORDS ) != 0;
+    }
+
+    /**  Nothing is ever written to a segment.  */
+    public void flush() {
+    }
+
+    /**  The offset of the ith entry in the term dictionary.  */
+    private long entry( int i ) {
+    	return SegmentWriter.TERMS_HEADER + (long) SegmentWriter.TERM_ENTRY * i;
+    }
+
+    /**  Decodes the term with termID i, the ith term of the dictionary.  */
+    public String getTerm( int i ) {
+    	long e = entry( i );
+    	byte[] b = new byte[terms.getInt( e + 8 )];
+    	terms.getBytes( terms.getLong( e ), b );
+    	return new String( b, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     *  Returns the termID of a term, its position in the sorted term
+     *  dictionary, or -1 if the term is not in the segment.
+     */
+    public int getTermID( String token ) {
+    	int lo = 0, hi = termCount - 1;
+    	while ( lo <= hi ) {
+    		int mid = ( lo + hi ) >>> 1;
+    		int cmp = getTerm( mid ).compareTo( token );
+    		if ( cmp < 0 ) {
+    			lo = mid + 1;
+    		}
+    		else if ( cmp > 0 ) {
+    			hi = mid - 1;
+    		}
+    		else {
+    			return mid;
+    		}
+    	}
+    	return -1;
+    }
+
+    /**
+     *  Returns the postings for a specific term, or null
+     *  if the term is not in the segment.
+     */
+    public PostingsList getPostings( String token ) {
+    	return getPostings( getTermID( token ));
+    }
+
+    /**
+     *  Returns the postings of a termID, or null if there is no such term.
+     */
+    public PostingsList getPostings( int termID ) {
+    	return termID >= 0 && termID < termCount ? readPostings( termID ) : null;
+    }
+
+    public int getDocumentFrequency( int termID ) {
+    	return termID >= 0 && termID < termCount ? terms.getInt( entry( termID ) + 24 ) : 0;
+    }
+
+    public RankingStatistics getStatistics() {
+    	return stats;
+    }
+
+    public DocumentStore getDocuments() {
+    	return documents;
+    }
+
+    /**
+     *  Decodes the postings of the ith term.
+     */
+    private PostingsList readPostings( int i ) {
+    	long e = entry( i );
+    	byte[] b = new byte[terms.getInt( e + 20 )];
+    	postings.getBytes( terms.getLong( e + 12 ), b );
+    	PostingsList pl = PostingsList.decode( b, 0, terms.getInt( e + 24 ), codec );
+    	pl.updateMaxWeight( terms.getDouble( e + 28 ));
+    	return pl;
+    }
+
+    /**
+     *  Document vectors are not stored in a segment.
+     */
+    public ForwardIndex getForwardIndex() {
+    	return null;
+    }
+
+    /**
+     *  True if the segment has the vectors of its documents, which
+     *  segments saved before forward.dat existed do not.
+     */
+    boolean hasDocumentVectors() {
+    	return forward != null;
+    }
+
+    /**
+     *  Returns the words of a document with their term frequencies, from
+     *  forward.dat, or null if the document is not in the segment or the
+     *  segment has no document vectors.
+     */
+    public HashMap<String, Integer> getDocument( int docID ) {
+    	if ( forward == null ) {
+    		return null;
+    	}
+    	int lo = 0, hi = forwardCount - 1;
+    	while ( lo <= hi ) {
+    		int mid = ( lo + hi ) >>> 1;
+    		long e = SegmentWriter.FORWARD_HEADER + (long) SegmentWriter.FORWARD_ENTRY * mid;
+    		int d = forward.getInt( e );
+    		if ( d < docID ) {
+    			lo = mid + 1;
+    		}
+    		else if ( d > docID ) {
+    			hi = mid - 1;
+    		}
+    		else {
+    			long pair = SegmentWriter.FORWARD_HEADER + (long) SegmentWriter.FORWARD_ENTRY * forwardCount
+    				+ 8 * forward.getLong( e + 4 );
+    			int n = forward.getInt( e + 12 );
+    			HashMap<String, Integer> words = new HashMap<String, Integer>();
+    			for ( int i=0; i<n; i++, pair += 8 ) {
+    				words.put( getTerm( forward.getInt( pair )), forward.getInt( pair + 4 ));
+    			}
+    			return words;
+    		}
+    	}
+    	return null;
+    }
+
+    /**  A segment never changes, so it is its own snapshot.  */
+    public Index getSnapshot() {
+    	return this;
+    }
+
+    public Iterator<String> getDictionary() {
+    	return new Iterator<String>() {
+    		int i = 0;
+    		public boolean hasNext() {
+    			return i < termCount;
+    		}
+    		public String next() {
+    			if ( i >= termCount ) {
+    				throw new NoSuchElementException();
+    			}
+    			return getTerm( i++ );
+    		}
+    	};
+    }
+
+    /**
+     *  Searches the index for postings matching the query.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return new Searcher( this ).search( query, queryType, rankingType, structureType );
+    }
+
+    /**
+     *  Searches the index for postings matching the query. Ranked
+     *  queries only return the k best documents.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
+    	return new Searcher( this ).search( query, queryType, rankingType, structureType, k );
+    }
+
+    /**
+     *  Nothing to write back, the mappings are released with the index.
+     */
+    public void cleanup() {
+    }
+}
@@ -0,0 +1,170 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ *   The documents of one index: the path and length of each docID.
+ *
+ *   The tables are dense arrays indexed by docID. The paths are kept
+ *   as UTF-8 in one shared byte[] and only turned into Strings when
+ *   asked for. Removed documents leave holes in it, which are
+ *   compacted away once they make up half of it.
+ */
+public class DocumentStore {
+
+    /** The UTF-8 bytes of all paths, concatenated. */
+    private byte[] paths = new byte[4096];
+
+    /** Number of bytes used in paths, including holes. */
+    private int used = 0;
+
+    /** Number of bytes in paths belonging to removed documents. */
+    private int garbage = 0;
+
+    /** Where each document's path starts in paths, and its length in bytes. */
+    private int[] pathStart = new int[64];
+    private int[] pathBytes = new int[64];
+
+    /** Number of tokens in each document, or -1 if the docID is not in use. */
+    private int[] lengths = newLengths( 64 );
+
+    /** Number of documents. */
+    private int size = 0;
+
+
+    /**
+     *  Adds a document, with length 0 until setLength() is called. A
+     *  document that is already in the store gets the new path.
+     */
+    public synchronized void add( int docID, String path ) {
+    	ensureCapacity( docID );
+    	if ( lengths[docID] < 0 ) {
+    		lengths[docID] = 0;
+    		size++;
+    	}
+    	else {
+    		garbage += pathBytes[docID];
+    	}
+    	byte[] b = path.getBytes( StandardCharsets.UTF_8 );
+    	if ( used + b.length > paths.length ) {
+    		paths = Arrays.copyOf( paths, Math.max( paths.length * 2, used + b.length ));
+    	}
+    	System.arraycopy( b, 0, paths, used, b.length );
+    	pathStart[docID] = used;
+    	pathBytes[docID] = b.length;
+    	used += b.length;
+    }
+
+    /**
+     *  Sets the number of tokens in a document. A docID that has not
+     *  been added is added without a path.
+     */
+    public synchronized void setLength( int docID, int length ) {
+    	ensureCapacity( docID );
+    	if ( lengths[docID] < 0 ) {
+    		size++;
+    	}
+    	lengths[docID] = length;
+    }
+
+    /**
+     *  Removes a document, if it is in the store.
+     */
+    public synchronized void remove( int docID ) {
+    	if ( !contains( docID )) {
+    		return;
+    	}
+    	lengths[docID] = -1;
+    	garbage += pathBytes[docID];
+    	pathBytes[docID] = 0;
+    	size--;
+    	if ( garbage > used / 2 ) {
+    		compact();
+    	}
+    }
+
+    public synchronized boolean contains( int docID ) {
+    	return docID >= 0 && docID < lengths.length && lengths[docID] >= 0;
+    }
+
+    /**  Number of documents  */
+    public synchronized int size() {
+    	return size;
+    }
+
+    /**
+     *  Returns the path of a document, or null if it is not in the
+     *  store or has no path.
+     */
+    public synchronized String getPath( int docID ) {
+    	if ( !contains( docID ) || pathBytes[docID] == 0 ) {
+    		return null;
+    	}
+    	return new String( paths, pathStart[docID], pathBytes[docID], StandardCharsets.UTF_8 );
+    }
+
+    /**
+     *  Returns the number of tokens in a document, or 0 if it is not
+     *  in the store.
+     */
+    public synchronized int getLength( int docID ) {
+    	return contains( docID ) ? lengths[docID] : 0;
+    }
+
+    /**
+     *  Returns the smallest docID in the store that is at least
+     *  @code{from}, or -1 if there is none. Iterates over all
+     *  documents in docID order, from nextDocID(0).
+     */
+    public synchronized int nextDocID( int from ) {
+    	for ( int d=Math.max( from, 0 ); d<lengths.length; d++ ) {
+    		if ( lengths[d] >= 0 ) {
+    			return d;
+    		}
+    	}
+    	return -1;
+    }
+
+
+    /**
+     *  Moves the paths together, dropping the holes.
+     */
+    private void compact() {
+    	byte[] newPaths = new byte[Math.max( 4096, 2 * (used - garbage) )];
+    	int p = 0;
+    	for ( int d=0; d<lengths.length; d++ ) {
+    		if ( lengths[d] >= 0 && pathBytes[d] > 0 ) {
+    			System.arraycopy( paths, pathStart[d], newPaths, p, pathBytes[d] );
+    			pathStart[d] = p;
+    			p += pathBytes[d];
+    		}
+    	}
+    	paths = newPaths;
+    	used = p;
+    	garbage = 0;
+    }
+
+    private void ensureCapacity( int docID ) {
+    	if ( docID >= lengths.length ) {
+    		int capacity = Math.max( docID + 1, lengths.length * 2 );
+    		pathStart = Arrays.copyOf( pathStart, capacity );
+    		pathBytes = Arrays.copyOf( pathBytes, capacity );
+    		int[] newLengths = newLengths( capacity );
+    		System.arraycopy( lengths, 0, newLengths, 0, lengths.length );
+    		lengths = newLengths;
+    	}
+    }
+
+    private static int[] newLengths( int capacity ) {
+    	int[] l = new int[capacity];
+    	Arrays.fill( l, -1 );
+    	return l;
+    }
+}
@@ -0,0 +1,75 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *   Elias-Fano coding of the values themselves.
+ *
+ *   With n values up to u, every value is split into l = log2(u/n) low
+ *   bits, which are bit-packed, and the remaining high bits, which are
+ *   stored in unary as set bits in a bit vector of n + (u >> l) + 1
+ *   bits. That is less than 2 + log2(u/n) bits per value, whatever the
+ *   distribution of the gaps.
+ */
+public class EliasFanoCodec implements PostingsCodec {
+
+    public int getId() {
+    	return ELIAS_FANO;
+    }
+
+    public String getName() {
+    	return "eliasfano";
+    }
+
+    /**  Number of low bits per value  */
+    private static int lowBits( int u, int n ) {
+    	return n == 0 || u / n == 0 ? 0 : Codecs.bitWidth( u / n ) - 1;
+    }
+
+    public void encode( int[] values, int offset, int n, ByteArrayOutputStream out ) {
+    	if ( n == 0 ) {
+    		return;
+    	}
+    	int u = values[offset+n-1];
+    	int l = lowBits( u, n );
+    	Codecs.writeVarInt( u, out );
+    	byte[] low = new byte[(int) (( (long) n * l + 7 ) / 8 )];
+    	Codecs.pack( values, offset, n, l, low, 0 );
+    	byte[] high = new byte[(int) (( (long) n + ( u >>> l ) + 1 + 7 ) / 8 )];
+    	for ( int i=0; i<n; i++ ) {
+    		long bit = (long) ( values[offset+i] >>> l ) + i;
+    		high[(int) ( bit >>> 3 )] |= 1 << ( bit & 7 );
+    	}
+    	out.write( low, 0, low.length );
+    	out.write( high, 0, high.length );
+    }
+
+    public int decode( byte[] in, int pos, int[] values, int offset, int n ) {
+    	if ( n == 0 ) {
+    		return pos;
+    	}
+    	int[] p = { pos };
+    	int u = Codecs.readVarInt( in, p );
+    	int l = lowBits( u, n );
+    	Codecs.unpack( in, 8L * p[0], l, values, offset, n );
+    	int highStart = p[0] + (int) (( (long) n * l + 7 ) / 8 );
+    	int highBytes = (int) (( (long) n + ( u >>> l ) + 1 + 7 ) / 8 );
+    	int i = 0;
+    	for ( int b=0; i<n; b++ ) {
+    		int bits = in[highStart+b] & 0xFF;
+    		while ( bits != 0 ) {
+    			int bit = 8*b + Integer.numberOfTrailingZeros( bits );
+    			values[offset+i] |= ( bit - i ) << l;
+    			i++;
+    			bits &= bits - 1;
+    		}
+    	}
+    	return highStart + highBytes;
+    }
+}
@@ -0,0 +1,176 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+
+/**
+ *   Remembers which docID, size and modification time every indexed
+ *   file had, so that re-indexing a directory only has to parse the
+ *   files that are new or have changed.
+ *
+ *   Files that could not be parsed are kept as quarantined, with the
+ *   reason, and are not tried again until they change.
+ */
+public class FileCatalog {
+
+    public static final String CATALOG_FILE = "catalog.dat";
+
+    private static final int VERSION = 2;
+
+    /**
+     *   What the catalog knows about one file.
+     */
+    public static class Entry {
+    	public final int docID;
+    	public final long size;
+    	public final long modified;
+
+    	/** Why the file was quarantined, or null if it was indexed. */
+    	public final String problem;
+
+    	public Entry( int docID, long size, long modified ) {
+    		this( docID, size, modified, null );
+    	}
+
+    	public Entry( int docID, long size, long modified, String problem ) {
+    		this.docID = docID;
+    		this.size = size;
+    		this.modified = modified;
+    		this.problem = problem;
+    	}
+
+    	/**  True if @code{f} still has the size and time it was indexed with  */
+    	public boolean isCurrent( File f ) {
+    		return f.length() == size && f.lastModified() == modified;
+    	}
+    }
+
+    /** The entries, by path. */
+    private HashMap<String,Entry> entries = new HashMap<String,Entry>();
+
+
+    public synchronized Entry get( String path ) {
+    	return entries.get( path );
+    }
+
+    public synchronized void put( String path, int docID, long size, long modified ) {
+    	entries.put( path, new Entry( docID, size, modified ));
+    }
+
+    /**
+     *  Marks the file at @code{path} as quarantined for @code{problem}.
+     */
+    public synchronized void quarantine( String path, String problem ) {
+    	Entry e = entries.get( path );
+    	if ( e != null ) {
+    		entries.put( path, new Entry( e.docID, e.size, e.modified, problem ));
+    	}
+    }
+
+    /**
+     *  Returns the quarantined files, with their problems.
+     */
+    public synchronized TreeMap<String,String> getQuarantined() {
+    	TreeMap<String,String> quarantined = new TreeMap<String,String>();
+    	for ( String path : entries.keySet() ) {
+    		if ( entries.get( path ).problem != null ) {
+    			quarantined.put( path, entries.get( path ).problem );
+    		}
+    	}
+    	return quarantined;
+    }
+
+    public synchronized Entry remove( String path ) {
+    	return entries.remove( path );
+    }
+
+    public synchronized int size() {
+    	return entries.size();
+    }
+
+    /**
+     *  Returns the cataloged paths that lie under the directory or
+     *  file @code{root}.
+     */
+    public synchronized ArrayList<String> getPaths( File root ) {
+    	String prefix = root.getPath();
+    	ArrayList<String> paths = new ArrayList<String>();
+    	for ( String path : entries.keySet() ) {
+    		if ( path.equals( prefix ) || path.startsWith( prefix + File.separator )) {
+    			paths.add( path );
+    		}
+    	}
+    	return paths;
+    }
+
+    /**
+     *  Writes the catalog to @code{dir}.
+     */
+    public synchronized void save( File dir ) throws IOException {
+    	if ( !dir.isDirectory() && !dir.mkdirs() ) {
+    		throw new IOException( "Cannot create directory " + dir );
+    	}
+    	try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( new File( dir, CATALOG_FILE ))))) {
+    		out.writeInt( SegmentWriter.MAGIC );
+    		out.writeInt( VERSION );
+    		out.writeInt( entries.size() );
+    		for ( String path : entries.keySet() ) {
+    			Entry e = entries.get( path );
+    			out.writeUTF( path );
+    			out.writeInt( e.docID );
+    			out.writeLong( e.size );
+    			out.writeLong( e.modified );
+    			out.writeBoolean( e.problem != null );
+    			if ( e.problem != null ) {
+    				out.writeUTF( e.problem );
+    			}
+    		}
+    	}
+    }
+
+    /**
+     *  Reads the catalog saved in @code{dir}, or returns an empty
+     *  catalog if there is none.
+     */
+    public static FileCatalog load( File dir ) throws IOException {
+    	FileCatalog catalog = new FileCatalog();
+    	File f = new File( dir, CATALOG_FILE );
+    	if ( f.isFile() ) {
+    		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( f )))) {
+    			if ( in.readInt() != SegmentWriter.MAGIC ) {
+    				throw new IOException( "Not a file catalog: " + f );
+    			}
+    			int version = in.readInt();
+    			if ( version < 1 || version > VERSION ) {
+    				throw new IOException( "Unknown file catalog version " + version + ": " + f );
+    			}
+    			int n = in.readInt();
+    			for ( int i=0; i<n; i++ ) {
+    				String path = in.readUTF();
+    				int docID = in.readInt();
+    				long size = in.readLong();
+    				long modified = in.readLong();
+    				// Version 1 had no quarantine
+    				String problem = version >= 2 && in.readBoolean() ? in.readUTF() : null;
+    				catalog.entries.put( path, new Entry( docID, size, modified, problem ));
+    			}
+    		}
+    	}
+    	return catalog;
+    }
+}
@@ -0,0 +1,209 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *   The terms of each document with their term frequencies, sorted by
+ *   termID and packed into two int pools shared by all documents.
+ *
+ *   Document d's pairs are termIDs[start[d]+i], tfs[start[d]+i] for
+ *   i < length[d]. A document is added in one go once all its tokens
+ *   are known. Removed documents leave holes in the pools, which are
+ *   compacted away once they make up half of them.
+ */
+public class ForwardIndex {
+
+    private int[] termIDs = new int[1024];
+    private int[] tfs = new int[1024];
+
+    /** Number of pool slots in use, including holes. */
+    private int used = 0;
+
+    /** Number of pool slots belonging to removed documents. */
+    private int garbage = 0;
+
+    /** Where each document starts in the pools. */
+    private int[] start = new int[64];
+
+    /** Number of terms in each document, or -1 if it is not in the index. */
+    private int[] length = newLengths( 64 );
+
+    /** Scratch space for sorting the pairs of a new document. */
+    private long[] pairs = new long[64];
+
+
+    /**
+     *  Builds the forward index of the postings in @code{lists}, where
+     *  the index of a list is its termID. Null lists are skipped.
+     */
+    public static ForwardIndex invert( PostingsList[] lists, int termCount ) {
+    	ForwardIndex forward = new ForwardIndex();
+    	int maxDocID = -1;
+    	int total = 0;
+    	for ( int t=0; t<termCount; t++ ) {
+    		if ( lists[t] != null && !lists[t].isEmpty() ) {
+    			maxDocID = Math.max( maxDocID, lists[t].getDocID( lists[t].size()-1 ));
+    			total += lists[t].size();
+    		}
+    	}
+    	forward.ensureDocs( maxDocID );
+    	forward.ensurePool( total );
+    	int[] counts = new int[maxDocID+1];
+    	for ( int t=0; t<termCount; t++ ) {
+    		for ( int i=0; lists[t] != null && i<lists[t].size(); i++ ) {
+    			counts[lists[t].getDocID( i )]++;
+    		}
+    	}
+    	for ( int d=0; d<=maxDocID; d++ ) {
+    		if ( counts[d] > 0 ) {
+    			forward.start[d] = forward.used;
+    			forward.length[d] = 0;
+    			forward.used += counts[d];
+    		}
+    	}
+    	// Going through the terms in order leaves every document sorted
+    	for ( int t=0; t<termCount; t++ ) {
+    		for ( int i=0; lists[t] != null && i<lists[t].size(); i++ ) {
+    			int d = lists[t].getDocID( i );
+    			int p = forward.start[d] + forward.length[d]++;
+    			forward.termIDs[p] = t;
+    			forward.tfs[p] = lists[t].getTermFrequency( i );
+    		}
+    	}
+    	return forward;
+    }
+
+
+    /**
+     *  Adds a document with the n terms in @code{terms} and their
+     *  term frequencies in @code{counts}, in any order. A document
+     *  that is already in the index is replaced.
+     */
+    public void add( int docID, int[] terms, int[] counts, int n ) {
+    	remove( docID );
+    	ensureDocs( docID );
+    	ensurePool( used + n );
+    	if ( pairs.length < n ) {
+    		pairs = new long[Math.max( n, pairs.length * 2 )];
+    	}
+    	for ( int i=0; i<n; i++ ) {
+    		pairs[i] = ((long)terms[i] << 32) | counts[i];
+    	}
+    	Arrays.sort( pairs, 0, n );
+    	start[docID] = used;
+    	length[docID] = n;
+    	for ( int i=0; i<n; i++ ) {
+    		termIDs[used+i] = (int)(pairs[i] >>> 32);
+    		tfs[used+i] = (int)pairs[i];
+    	}
+    	used += n;
+    }
+
+    /**
+     *  Removes a document, if it is in the index.
+     */
+    public void remove( int docID ) {
+    	if ( !contains( docID )) {
+    		return;
+    	}
+    	garbage += length[docID];
+    	length[docID] = -1;
+    	if ( garbage > used / 2 ) {
+    		compact();
+    	}
+    }
+
+    public boolean contains( int docID ) {
+    	return docID >= 0 && docID < length.length && length[docID] >= 0;
+    }
+
+    /**  Number of distinct terms in a document, 0 if it is not in the index  */
+    public int size( int docID ) {
+    	return contains( docID ) ? length[docID] : 0;
+    }
+
+    /**  The termID of the ith term of a document, in increasing termID order  */
+    public int getTermID( int docID, int i ) {
+    	return termIDs[start[docID]+i];
+    }
+
+    /**  The tf of the ith term of a document  */
+    public int getTermFrequency( int docID, int i ) {
+    	return tfs[start[docID]+i];
+    }
+
+    /**
+     *  Returns the tf of a term in a document, or 0 if it does not occur there.
+     */
+    public int getTermFrequencyOf( int docID, int termID ) {
+    	if ( !contains( docID )) {
+    		return 0;
+    	}
+    	int i = Arrays.binarySearch( termIDs, start[docID], start[docID] + length[docID], termID );
+    	return i >= 0 ? tfs[i] : 0;
+    }
+
+    /**
+     *  Returns the Euclidean length of a document's tf vector.
+     */
+    public double getEuclLength( int docID ) {
+    	double sum = 0;
+    	for ( int i=0; i<size( docID ); i++ ) {
+    		double tf = getTermFrequency( docID, i );
+    		sum += tf * tf;
+    	}
+    	return Math.sqrt( sum );
+    }
+
+
+    /**
+     *  Moves the documents together, dropping the holes.
+     */
+    private void compact() {
+    	int[] newTermIDs = new int[Math.max( 1024, 2 * (used - garbage) )];
+    	int[] newTfs = new int[newTermIDs.length];
+    	int p = 0;
+    	for ( int d=0; d<length.length; d++ ) {
+    		if ( length[d] > 0 ) {
+    			System.arraycopy( termIDs, start[d], newTermIDs, p, length[d] );
+    			System.arraycopy( tfs, start[d], newTfs, p, length[d] );
+    			start[d] = p;
+    			p += length[d];
+    		}
+    	}
+    	termIDs = newTermIDs;
+    	tfs = newTfs;
+    	used = p;
+    	garbage = 0;
+    }
+
+    private void ensureDocs( int docID ) {
+    	if ( docID >= length.length ) {
+    		int capacity = Math.max( docID + 1, length.length * 2 );
+    		start = Arrays.copyOf( start, capacity );
+    		int[] newLength = newLengths( capacity );
+    		System.arraycopy( length, 0, newLength, 0, length.length );
+    		length = newLength;
+    	}
+    }
+
+    private void ensurePool( int capacity ) {
+    	if ( capacity > termIDs.length ) {
+    		capacity = Math.max( capacity, termIDs.length * 2 );
+    		termIDs = Arrays.copyOf( termIDs, capacity );
+    		tfs = Arrays.copyOf( tfs, capacity );
+    	}
+    }
+
+    private static int[] newLengths( int capacity ) {
+    	int[] l = new int[capacity];
+    	Arrays.fill( l, -1 );
+    	return l;
+    }
+}
@@ -10,313 +10,457 @@
 
 package ir;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.LinkedList;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 
 /**
- *   Implements an inverted index as a Hashtable from words to PostingsLists.
+ *   Implements an inverted index as an array of PostingsLists indexed
+ *   by termID. The TermDictionary maps terms to their termIDs.
+ *
+ *   If CREATE_BIWORDS is set, every two words that follow each other
+ *   in a document are indexed as a biword as well, at the position of
+ *   the first, so that phrases can be looked up without comparing the
+ *   positions of each word. Biwords have postings like any other
+ *   term, but are not part of the document vectors or their norms.
  */
 public class HashedIndex implements Index {
 	
 	public static boolean CREATE_INVERSE = true;
+
+	/** Index the biwords of the documents, see hasBiwords(). */
+	public static boolean CREATE_BIWORDS = false;
 	
-    /** The index as a hashtable. */
-    private HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
-    private HashMap<Integer,HashMap<String, Integer>> inverseIndex = new HashMap<Integer, HashMap<String,Integer>>();
+    /** Gives each term a termID. */
+    private TermDictionary terms;
+
+    /** The PostingsList of each termID, or null if it has no postings. */
+    private PostingsList[] index = new PostingsList[1024];
+
+    /** The terms of each document, kept if CREATE_INVERSE is set. */
+    private ForwardIndex forward = new ForwardIndex();
+    
+    /** The termIDs that have a posting for the document being inserted, and their tfs. */
+    private int[] openTerms = new int[64];
+    private int[] openTfs = new int[64];
+    private int openCount = 0;
+
+    /** The path and length of each document. */
+    private DocumentStore documents = new DocumentStore();
+
+    /** Document lengths and norms, and the idf of each termID. */
+    private RankingStatistics stats = new RankingStatistics( this );
+
+    /** Documents that have been deleted or replaced. Their postings stay until the index is saved. */
+    private BitSet deleted = new BitSet();
+
+    /** False once a document has been indexed without its biwords. */
+    private boolean biwords = true;
+
+
+    public HashedIndex() {
+    	this( new TermDictionary() );
+    }
+
+    /**
+     *  Creates an index whose termIDs come from @code{terms}, which
+     *  other indexes may share.
+     */
+    public HashedIndex( TermDictionary terms ) {
+    	this.terms = terms;
+    }
+
+    /**
+     *  Loads a saved segment into a new HashedIndex, so that it can be
+     *  updated. This reads all postings onto the heap.
+     */
+    public static HashedIndex load( File dir ) throws IOException {
+    	return copyOf( new DiskIndex( dir ), null, null );
+    }
+
+    /**
+     *  Copies the postings and documents of @code{source} into a new
+     *  HashedIndex, leaving out the deleted documents and, unless
+     *  @code{include} is null, the documents it does not accept. The
+     *  number of positions copied is reported to @code{progress} after
+     *  every term, unless it is null.
+     */
+    public static HashedIndex copyOf( Index source, IntPredicate include, IntConsumer progress ) {
+    	HashedIndex copy = new HashedIndex();
+    	copy.biwords = source.hasBiwords();
+    	BitSet biwordIDs = new BitSet();
+    	double[] squares = new double[64];
+    	Iterator<String> it = source.getDictionary();
+    	while (it.hasNext()) {
+    		String token = it.next();
+    		PostingsList pl = source.getPostings(token);
+    		PostingsList live = new PostingsList();
+    		live.updateMaxWeight(pl.getMaxWeight());
+    		boolean biword = TermDictionary.isBiword(token);
+    		int positions = 0;
+    		PostingsList.Cursor c = pl.getCursor();
+    		while (c.next()) {
+    			int docID = c.getDocID();
+    			if (source.isDeleted(docID) || (include != null && !include.test(docID))) {
+    				continue;
+    			}
+    			int tf = c.getTermFrequency();
+    			for (int j = 0; j < tf; j++) {
+    				live.add(docID, c.getPosition(j));
+    			}
+    			if (docID >= squares.length) {
+    				squares = Arrays.copyOf(squares, Math.max(docID + 1, squares.length * 2));
+    			}
+    			if (!biword) {
+    				squares[docID] += (double) tf * tf;
+    			}
+    			positions += tf;
+    		}
+    		if (!live.isEmpty()) {
+    			int termID = copy.terms.add(token);
+    			copy.ensureCapacity(termID);
+    			copy.index[termID] = live;
+    			if (biword) {
+    				biwordIDs.set(termID);
+    			}
+    		}
+    		if (progress != null) {
+    			progress.accept(positions);
+    		}
+    	}
+    	DocumentStore docs = source.getDocuments();
+    	for (int d = docs.nextDocID(0); d >= 0; d = docs.nextDocID(d + 1)) {
+    		if (source.isDeleted(d) || (include != null && !include.test(d))) {
+    			continue;
+    		}
+    		String path = docs.getPath(d);
+    		copy.documents.add(d, path == null ? "" : path);
+    		copy.documents.setLength(d, docs.getLength(d));
+    		copy.stats.addDocument(d, docs.getLength(d), d < squares.length ? Math.sqrt(squares[d]) : 0);
+    	}
+    	if (CREATE_INVERSE) {
+    		PostingsList[] words = copy.index;
+    		if (!biwordIDs.isEmpty()) {
+    			words = words.clone();
+    			for (int t = biwordIDs.nextSetBit(0); t >= 0; t = biwordIDs.nextSetBit(t + 1)) {
+    				words[t] = null;
+    			}
+    		}
+    		copy.forward = ForwardIndex.invert(words, copy.terms.size());
+    	}
+    	return copy;
+    }
 
 
     /**
      *  Inserts this token in the index.
      */
     public void insert( String token, int docID, int offset ) {
-    	if (!index.containsKey(token)) {
-			index.put(token, new PostingsList());
+    	insert( terms.add( token ), docID, offset );
+    }
+
+    /**
+     *  Inserts the term with this termID in the index.
+     */
+    public void insert( int termID, int docID, int offset ) {
+    	ensureCapacity(termID);
+    	if (index[termID] == null) {
+			index[termID] = new PostingsList();
 		}
-		index.get(token).add(docID, offset);
-		
-		
-		if (CREATE_INVERSE) {
-			if (!inverseIndex.containsKey(docID)) {
-				inverseIndex.put(docID, new HashMap<String, Integer>());
-			}
-			if (!inverseIndex.get(docID).containsKey(token)) {
-				inverseIndex.get(docID).put(token, 1);
-			}
-			else {
-				Integer val = inverseIndex.get(docID).get(token);
-				inverseIndex.get(docID).replace(token, (val+1));
+		PostingsList pl = index[termID];
+		if (pl.isEmpty() || pl.getDocID(pl.size()-1) != docID) {
+			if (openCount == openTerms.length) {
+				openTerms = Arrays.copyOf(openTerms, openCount * 2);
+				openTfs = Arrays.copyOf(openTfs, openCount * 2);
 			}
+			openTerms[openCount++] = termID;
 		}
+		pl.add(docID, offset);
+    }
+
+    private void ensureCapacity( int termID ) {
+    	if (termID >= index.length) {
+    		index = Arrays.copyOf(index, Math.max(index.length * 2, termID + 1));
+    	}
     }
 
     /**
-     *  Returns the postings for a specific term, or null
-     *  if the term is not in the index.
+     *  Records the length of a document whose tokens have all been
+     *  inserted, indexes its biwords if CREATE_BIWORDS is set, updates
+     *  the score upper bounds of its terms and adds its words to the
+     *  forward index.
      */
-    public PostingsList getPostings( String token ) {
-		if (index.containsKey(token))
-			return index.get(token);
-		else
-			return null;
+    public void finishDocument( int docID, int length ) {
+    	documents.setLength( docID, length );
+    	int words = openCount;
+    	if (CREATE_BIWORDS) {
+    		insertBiwords(docID);
+    	}
+    	else {
+    		biwords = false;
+    	}
+    	double squares = 0;
+    	for (int i = 0; i < openCount; i++) {
+    		PostingsList pl = index[openTerms[i]];
+    		openTfs[i] = pl.getTermFrequency(pl.size()-1);
+    		pl.updateMaxWeight(openTfs[i] / (double) length);
+    		if (i < words) {
+    			squares += (double) openTfs[i] * openTfs[i];
+    		}
+    	}
+    	stats.addDocument(docID, length, Math.sqrt(squares));
+    	if (CREATE_INVERSE && words > 0) {
+    		forward.add(docID, openTerms, openTfs, words);
+    	}
+    	openCount = 0;
     }
-    public HashMap<String, Integer> getDocument(int docID) {
-    	return inverseIndex.get(docID);
+
+    /**
+     *  Inserts the biwords of a document whose words have all been
+     *  inserted, in the order of their positions.
+     */
+    private void insertBiwords( int docID ) {
+    	int[] words = wordsOf(docID, Arrays.copyOf(openTerms, openCount));
+    	for (int pos = 0; pos + 1 < words.length; pos++) {
+    		if (words[pos] >= 0 && words[pos+1] >= 0) {
+    			insert(terms.addBiword(words[pos], words[pos+1]), docID, pos);
+    		}
+    	}
     }
 
+    /**
+     *  Returns the termID of the word at each position of a document,
+     *  or -1 where there is none, from the postings of @code{termIDs}.
+     */
+    private int[] wordsOf( int docID, int[] termIDs ) {
+    	PostingsList.Cursor[] cursors = new PostingsList.Cursor[termIDs.length];
+    	int length = 0;
+    	for (int i = 0; i < termIDs.length; i++) {
+    		PostingsList.Cursor c = index[termIDs[i]].getCursor();
+    		if (c.advance(docID) && c.getDocID() == docID) {
+    			cursors[i] = c;
+    			length = Math.max(length, c.getPosition(c.getTermFrequency()-1) + 1);
+    		}
+    	}
+    	int[] words = new int[length];
+    	Arrays.fill(words, -1);
+    	for (int i = 0; i < termIDs.length; i++) {
+    		for (int j = 0; cursors[i] != null && j < cursors[i].getTermFrequency(); j++) {
+    			words[cursors[i].getPosition(j)] = termIDs[i];
+    		}
+    	}
+    	return words;
+    }
 
     /**
-     *  Searches the index for postings matching the query.
+     *  Marks a document as deleted. Searches skip it from now on. If the
+     *  document's terms are known from the forward index its postings
+     *  are removed at once, so that document frequencies stay exact;
+     *  otherwise they are dropped when the index is saved.
      */
-    public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
-    	long startTime = System.currentTimeMillis();
-    	PostingsList rList = new PostingsList();
-    	
-    	// Only do if the user specified a query
-		if (!query.terms.isEmpty()) {
-			
-    		if (queryType == Index.INTERSECTION_QUERY) {
-	    		rList = intersectQuery(query);
-	    	}
-    		else if (queryType == Index.PHRASE_QUERY) {
-		    	rList = phraseQuery(query);
-		    }
-    		else if (queryType == Index.RANKED_QUERY) {
-		    	System.out.println("NEW QUERY");
-		    	rList = rankedQuery(query);
-		    }
-    		
-		    if (SearchGUI.PRINT_TIMES)
-		    	System.out.println("Time taken to search: " + (System.currentTimeMillis() - startTime));
+    public void delete( int docID ) {
+    	deleted.set( docID );
+    	documents.remove( docID );
+    	stats.removeDocument( docID );
+    	if (biwords && forward.contains(docID)) {
+    		deleteBiwords(docID);
+    	}
+    	for (int i = 0; i < forward.size(docID); i++) {
+    		int termID = forward.getTermID(docID, i);
+    		PostingsList pl = index[termID];
+    		pl.remove(docID);
+    		if (pl.isEmpty()) {
+    			index[termID] = null;
+    		}
     	}
-	    
-		return rList;
+    	forward.remove( docID );
     }
-    public PostingsList rankedQuery(Query query) {
-    	PostingsList result = new PostingsList();
-		int N = docIDs.size();
-  
-    	for (String t : query.terms) {
-    		PostingsList pl = index.get(t);
-    		
+
+    /**
+     *  Removes the postings of the biwords of a document, which are
+     *  found from the positions of the words in its document vector.
+     */
+    private void deleteBiwords( int docID ) {
+    	int[] termIDs = new int[forward.size(docID)];
+    	for (int i = 0; i < termIDs.length; i++) {
+    		termIDs[i] = forward.getTermID(docID, i);
+    	}
+    	int[] words = wordsOf(docID, termIDs);
+    	for (int pos = 0; pos + 1 < words.length; pos++) {
+    		int termID = words[pos] >= 0 && words[pos+1] >= 0 ? terms.getBiword(words[pos], words[pos+1]) : -1;
+    		PostingsList pl = getPostings(termID);
     		if (pl != null) {
-	    		int df = pl.size();
-	    		double idf = Math.log(N / (double) df);
-	    		Iterator<PostingsEntry> it = pl.getIterator();
-	    		
-	    		while(it.hasNext()) {
-	    			PostingsEntry d = it.next();
-	    			int tf = d.getTermFrequency();
-	    			double wtd = tf * idf * query.weights.get(t);
-	    			d.score = wtd;
-	    		}
-	    		
-	    		// Union the PostingsList for the query term with the result
-	    		result.unionWith(pl);
+    			pl.remove(docID);
+    			if (pl.isEmpty()) {
+    				index[termID] = null;
+    			}
     		}
     	}
-    	
-    	Iterator<PostingsEntry> it = result.getIterator();
-		while (it.hasNext()) {
-			PostingsEntry d = it.next();
-			d.score = d.score / docLengths.get(d.docID+"");
-		}
-    	result.sort();
-    	return result;
     }
-    
-    public PostingsList phraseQuery(Query query) {
-    	PostingsList result = new PostingsList();
-    	
-    	if (query.terms.size() > 0) {
-    		LinkedList<PostingsList> pls = new LinkedList<PostingsList>();
-	    	PostingsList postings;
-	    	for (String token : query.terms) {
-	    		postings = getPostings(token);
-    			pls.add(postings);
-	    	}
-	    	
-	    	result = pls.poll();
-	    	while (!pls.isEmpty()) {
-	    		result = positionalIntersect(result, pls.poll());
-	    	}
-    	}
-    	return result;
+
+    public boolean isDeleted( int docID ) {
+    	return deleted.get( docID );
     }
-    
-    /** 
-     * Returns an intersected PostingsList by positions. 
-     * TODO:: Should be broken in to multiple methods.
-    */
-    private PostingsList positionalIntersect( PostingsList pl1, PostingsList pl2) {
-    	PostingsList answer = new PostingsList();
-    	if (!(pl1 == null || pl2 == null)) {
-    		Iterator<PostingsEntry> peIter1 = pl1.getIterator();
-	    	Iterator<PostingsEntry> peIter2 = pl2.getIterator();
-	    	
-	    	// Only meaningful to compare if both PostingsLists are non-empty
-	    	if (peIter1.hasNext() && peIter2.hasNext()) {
-	    		PostingsEntry pe1 = peIter1.next();
-	    		PostingsEntry pe2 = peIter2.next();
-	    		
-	    		while (true) {
-	    			if ( pe1.docID == pe2.docID ) {
-	    				Iterator<Integer> posIter1 = pe1.getPosIterator();
-	    				Iterator<Integer> posIter2 = pe2.getPosIterator();
-	    				
-	    				if (posIter1.hasNext() && posIter2.hasNext()) {
-	    					int pos1 = posIter1.next();
-	    					int pos2 = posIter2.next();
-	    					
-		    				while(true) {
-		    					if ( (pos1 + 1) == pos2 ) {
-		    						if (!answer.isEmpty()) {
-		    							if (answer.getLastEntry().docID == pe1.docID) {
-		    								answer.getLastEntry().addPos(pos2);
-		    							}
-		    							else {
-		    								answer.add(pe1.docID, pos2);
-		    							}
-		    						}
-		    						else {
-		    							answer.add(pe1.docID, pos2);
-		    						}
-		    					
-		    						if (posIter1.hasNext() && posIter2.hasNext()) {
-		    							pos1 = posIter1.next();
-		    							pos2 = posIter2.next();
-		    						}
-		    						else break;
-		    					}
-		    					else if ( (pos1 + 1) < pos2 ) {
-		    						if (!posIter1.hasNext())
-		    							break;
-		    						else
-		    							pos1 = posIter1.next();
-		    					}
-		    					else if ( (pos1 + 1) > pos2 ) {
-		    						if (!posIter2.hasNext())
-		    							break;
-		    						else
-		    							pos2 = posIter2.next();
-		    					}
-		    				}
-	    				}
-
-	    				if ( peIter1.hasNext() && peIter2.hasNext() ) {
-	    					pe1 = peIter1.next();
-	    					pe2 = peIter2.next();
-	    				}
-	    				else break;
-	    			}
-	    			else if (pe1.docID < pe2.docID) {
-	    				if (peIter1.hasNext()) {
-	    					pe1 = peIter1.next();
-	    				}
-	    				else break;
-	    			}
-	    			else if (pe1.docID > pe2.docID) {
-	    				if (peIter2.hasNext()) {
-	    					pe2 = peIter2.next();
-	    				}
-	    				else break;
-	    			}
-	    		}
-	    	}
-    	}
-    	
-    	return answer;
+
+    /**
+     *  True if the biwords of all documents in the index are indexed.
+     */
+    public boolean hasBiwords() {
+    	return biwords;
     }
 
-    public PostingsList intersectQuery(Query query) {
-    	PostingsList intersection = new PostingsList();
-    	
-    	if (query.terms.size() > 0) {
-    		LinkedList<PostingsList> pls = new LinkedList<PostingsList>();
-	    	PostingsList postings;
-	    	for (String token : query.terms) {
-	    		postings = getPostings(token);
-    			pls.add(postings);
-	    	}
-	    	
-	    	intersection = pls.poll();
-	    	while (!pls.isEmpty()) {
-	    		intersection = intersect(intersection, pls.poll());
-	    	}
-    	}
-    	return intersection;
+    /**
+     *  A HashedIndex is searched directly, so everything inserted is
+     *  already visible.
+     */
+    public void flush() {
+    }
+
+    public TermDictionary getTermDictionary() {
+    	return terms;
+    }
+
+    /**
+     *  Returns the termID of a term, or -1 if the term is not in the index.
+     */
+    public int getTermID( String token ) {
+    	int termID = terms.get(token);
+    	return getPostings(termID) != null ? termID : -1;
     }
+
     /**
-     * Finds the intersection between the two PostingsLists
-     * 
-     * @param p1 - The first PostingsList to intersect
-     * @param p2 - The second
-     * @return - The intersection between p1 and p2
+     *  Returns the postings for a specific term, or null
+     *  if the term is not in the index.
      */
-    private PostingsList intersect( PostingsList pl1, PostingsList pl2 ) {
-    	PostingsList answer = new PostingsList();
-    	if (!(pl1 == null || pl2 == null)) {
-    		Iterator<PostingsEntry> it1 = pl1.getIterator();
-	    	Iterator<PostingsEntry> it2 = pl2.getIterator();
-	    	
-	    	if (it1.hasNext() && it2.hasNext()) {
-	    		boolean done = false;
-	    		PostingsEntry pe1 = it1.next();
-	    		PostingsEntry pe2 = it2.next();
-	    		
-	    		while (!done) {
-	    			if (pe1.docID == pe2.docID) {
-	    				answer.add(pe1);
-	    				if (!it1.hasNext() || !it2.hasNext())
-	    					done = true;
-	    				else {
-	    					pe1 = it1.next();
-	    					pe2 = it2.next();
-	    				}
-	    			}
-	    			else if (pe1.docID < pe2.docID) {
-	    				if (it1.hasNext())
-	    					pe1 = it1.next();
-	    				else done = true;
-	    			}
-	    			else {
-	    				if (it2.hasNext())
-	    					pe2 = it2.next();
-	    				else done = true;
-	    			}
-	    		}
-	    	}
+    public PostingsList getPostings( String token ) {
+    	return getPostings(terms.get(token));
+    }
+
+    /**
+     *  Returns the postings of a termID, or null if it has none.
+     */
+    public PostingsList getPostings( int termID ) {
+    	return termID >= 0 && termID < index.length ? index[termID] : null;
+    }
+
+    public int getDocumentFrequency( int termID ) {
+    	PostingsList pl = getPostings(termID);
+    	return pl == null ? 0 : pl.size();
+    }
+
+    /**
+     *  Returns the ranking statistics.
+     */
+    public RankingStatistics getStatistics() {
+    	return stats;
+    }
+
+    public DocumentStore getDocuments() {
+    	return documents;
+    }
+
+    public String getTerm( int termID ) {
+    	return terms.getTerm(termID);
+    }
+
+    public ForwardIndex getForwardIndex() {
+    	return forward;
+    }
+
+    /**
+     *  A HashedIndex has no snapshots, it must not be searched while
+     *  it is written.
+     */
+    public Index getSnapshot() {
+    	return this;
+    }
+
+    /**
+     *  Returns the tf of each term in a document, or null if the
+     *  document is unknown or no forward index is kept.
+     */
+    public HashMap<String, Integer> getDocument(int docID) {
+    	if (!forward.contains(docID)) {
+    		return null;
+    	}
+    	HashMap<String, Integer> words = new HashMap<String, Integer>();
+    	for (int i = 0; i < forward.size(docID); i++) {
+    		words.put(terms.getTerm(forward.getTermID(docID, i)), forward.getTermFrequency(docID, i));
     	}
-    	return answer;
+    	return words;
     }
+
+
+    /**
+     *  Searches the index for postings matching the query.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return new Searcher(this).search( query, queryType, rankingType, structureType );
+    }
+
+    /**
+     *  Searches the index for postings matching the query. Ranked
+     *  queries only return the k best documents.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
+    	return new Searcher(this).search( query, queryType, rankingType, structureType, k );
+    }
+
     public double getEuclLength(int docID) {
-    	double docLength = 0;
-    	HashMap<String, Integer> wordCounts = inverseIndex.get(docID);
-    	for (Integer num : wordCounts.values()) {
-    		docLength += Math.pow(num, 2);
-    	}
-    	docLength = Math.sqrt(docLength);
-    	return docLength;
+    	return stats.getEuclideanNorm(docID);
     }
     public void printWordcount(int docID) {
     	int words = 0;
-    	HashMap<String, Integer> map = inverseIndex.get(docID);
-    	for (String token : map.keySet()) {
-    		words+= map.get(token);
+    	for (int i = 0; i < forward.size(docID); i++) {
+    		words+= forward.getTermFrequency(docID, i);
     	}
     	System.out.println(words);
     }
     /**
-     *  No need for cleanup in a HashedIndex.
+     *  Saves the index as a segment in SearchGUI.INDEX_DIR, from
+     *  where it can be opened as a DiskIndex.
      */
     public void cleanup() {
-    	
+    	try {
+    		SegmentWriter.write(this, new File(SearchGUI.INDEX_DIR));
+    	}
+    	catch (IOException e) {
+    		e.printStackTrace();
+    	}
     }
 
+	/**
+	 *  Iterates over the terms that have postings.
+	 */
 	@Override
 	public Iterator<String> getDictionary() {
-		// TODO Auto-generated method stub
-		return null;
+		return new Iterator<String>() {
+			int termID = advance(0);
+			private int advance(int t) {
+				while (t < terms.size() && getPostings(t) == null) {
+					t++;
+				}
+				return t;
+			}
+			public boolean hasNext() {
+				return termID < terms.size();
+			}
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				String term = terms.getTerm(termID);
+				termID = advance(termID + 1);
+				return term;
+			}
+		};
 	}
 }
@@ -32,14 +32,27 @@ public interface Index {
     public static final int BIGRAM = 1;
     public static final int SUBPHRASE = 2; 
 	
-    public HashMap<String, String> docIDs = new HashMap<String,String>();
-    public HashMap<String,Integer> docLengths = new HashMap<String,Integer>();
-
     public void insert( String token, int docID, int offset );
+    public void insert( int termID, int docID, int offset );
+    public TermDictionary getTermDictionary();
+    public void finishDocument( int docID, int length );
+    public void delete( int docID );
+    public void flush();
+    public boolean isDeleted( int docID );
+    public boolean hasBiwords();
     public Iterator<String> getDictionary();
+    public int getTermID( String token );
+    public String getTerm( int termID );
     public PostingsList getPostings( String token );
+    public PostingsList getPostings( int termID );
+    public int getDocumentFrequency( int termID );
+    public RankingStatistics getStatistics();
+    public DocumentStore getDocuments();
     public HashMap<String, Integer> getDocument(int docID);
+    public ForwardIndex getForwardIndex();
+    public Index getSnapshot();
     public PostingsList search( Query query, int queryType, int rankingType, int structureType );
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k );
     public void cleanup();
 
 }
@@ -0,0 +1,514 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ *   A read-only, point-in-time view of a SegmentedIndex: the segments
+ *   that had been published when it was taken and the documents that
+ *   had been deleted from them.
+ *
+ *   Nothing in a snapshot changes once it has been created, so any
+ *   number of threads can search it without locks while the index
+ *   goes on to publish newer snapshots. Every document lives in
+ *   exactly one segment. Queries are evaluated on all segments in
+ *   parallel, with the idf of each term taken from the whole snapshot,
+ *   and the results are merged.
+ *
+ *   Each segment belongs to a shard of the index. Merges only combine
+ *   segments of the same shard, so that the shards stay about equally
+ *   large and the search of a large collection is spread over as many
+ *   cores as there are shards.
+ */
+public class IndexSnapshot implements Index {
+
+    /** The pool the segments are searched on. */
+    public static ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    /** The segments, oldest first. Never changed. */
+    private final Index[] segments;
+
+    /** The shard of each segment. Never changed. */
+    private final int[] shards;
+
+    /** Documents deleted from the segments. Never changed. */
+    private final BitSet deleted;
+
+    /** Number of deleted documents in each segment. */
+    private final int[] deletedCounts;
+
+    /** Number of live documents, N in the idf. */
+    private final int documentCount;
+
+    /** Increases whenever an index publishes other documents. Merges keep it. */
+    private final long generation;
+
+    /** The idf of the terms looked up so far. */
+    private final ConcurrentHashMap<String,Float> idf = new ConcurrentHashMap<String,Float>();
+
+    /** All terms in sorted order, the termIDs of the snapshot. Built when first needed. */
+    private String[] terms;
+
+    /** The live documents of all segments. Built when first needed. */
+    private DocumentStore documents;
+    private RankingStatistics stats;
+
+
+    /**
+     *  Creates a snapshot of @code{segments}, all in shard 0, without
+     *  the documents in @code{deleted}. Neither may be changed afterwards.
+     */
+    public IndexSnapshot( Index[] segments, BitSet deleted, long generation ) {
+    	this( segments, new int[segments.length], deleted, generation );
+    }
+
+    /**
+     *  Creates a snapshot of @code{segments}, where segment i belongs to
+     *  shard shards[i], without the documents in @code{deleted}. None
+     *  of them may be changed afterwards.
+     */
+    public IndexSnapshot( Index[] segments, int[] shards, BitSet deleted, long generation ) {
+    	this.segments = segments;
+    	this.shards = shards;
+    	this.deleted = deleted;
+    	this.generation = generation;
+    	deletedCounts = new int[segments.length];
+    	int n = 0;
+    	for ( Index segment : segments ) {
+    		n += segment.getDocuments().size();
+    	}
+    	for ( int d=deleted.nextSetBit( 0 ); d>=0; d=deleted.nextSetBit( d+1 )) {
+    		int s = segmentOf( d );
+    		if ( s >= 0 ) {
+    			deletedCounts[s]++;
+    			n--;
+    		}
+    	}
+    	documentCount = n;
+    }
+
+    /**  The segments, oldest first. The array must not be changed.  */
+    public Index[] getSegments() {
+    	return segments;
+    }
+
+    /**  The shard of the segment at index @code{s} of getSegments()  */
+    public int getShard( int s ) {
+    	return shards[s];
+    }
+
+    /**  The documents deleted from the segments. The set must not be changed.  */
+    public BitSet getDeleted() {
+    	return deleted;
+    }
+
+    /**  Number of deleted documents in the segment at index @code{s} of getSegments()  */
+    public int getDeletedCount( int s ) {
+    	return deletedCounts[s];
+    }
+
+    public long getGeneration() {
+    	return generation;
+    }
+
+    /**  Number of live documents  */
+    public int getDocumentCount() {
+    	return documentCount;
+    }
+
+    /**
+     *  Returns the index of the segment holding @code{docID}, or -1.
+     */
+    private int segmentOf( int docID ) {
+    	for ( int s=0; s<segments.length; s++ ) {
+    		if ( segments[s].getDocuments().contains( docID )) {
+    			return s;
+    		}
+    	}
+    	return -1;
+    }
+
+    public boolean isDeleted( int docID ) {
+    	return deleted.get( docID );
+    }
+
+    /**
+     *  True if every segment has the biwords of all its documents, so
+     *  that phrases can be looked up by their biwords everywhere.
+     */
+    public boolean hasBiwords() {
+    	for ( Index segment : segments ) {
+    		if ( !segment.hasBiwords() ) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+    /**
+     *  Returns log(N/df) of a term, where df only counts the live
+     *  documents of all segments. Computed once per term and snapshot.
+     */
+    public float getIdf( String term ) {
+    	Float value = idf.get( term );
+    	if ( value == null ) {
+    		int df = getDocumentFrequency( term );
+    		value = df > 0 ? (float)Math.log( documentCount / (double)df ) : 0f;
+    		idf.put( term, value );
+    	}
+    	return value;
+    }
+
+    /**
+     *  Number of live documents containing @code{term}. Segments without
+     *  deleted documents answer from their dictionary, the others have
+     *  their postings counted.
+     */
+    private int getDocumentFrequency( String term ) {
+    	int df = 0;
+    	for ( int s=0; s<segments.length; s++ ) {
+    		if ( deletedCounts[s] == 0 ) {
+    			df += segments[s].getDocumentFrequency( segments[s].getTermID( term ));
+    			continue;
+    		}
+    		PostingsList pl = segments[s].getPostings( term );
+    		PostingsList.Cursor c = pl == null ? null : pl.getCursor();
+    		while ( c != null && c.next() ) {
+    			if ( !deleted.get( c.getDocID() )) {
+    				df++;
+    			}
+    		}
+    	}
+    	return df;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  Searches the snapshot for postings matching the query.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return search( query, queryType, rankingType, structureType, Integer.MAX_VALUE );
+    }
+
+    /**
+     *  Searches all segments in parallel and merges the results. Ranked
+     *  queries only return the k best documents.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
+    	long startTime = System.currentTimeMillis();
+    	if ( query.terms.isEmpty() ) {
+    		return new PostingsList();
+    	}
+    	PostingsList[] parts = new PostingsList[segments.length];
+    	SegmentSearch search = new SegmentSearch( query, queryType, structureType, k, Thread.currentThread(), parts, 0, segments.length );
+    	if ( segments.length > 1 ) {
+    		POOL.invoke( search );
+    	}
+    	else {
+    		search.compute();
+    	}
+    	PostingsList result = merge( parts, queryType, k );
+    	if ( SearchGUI.PRINT_TIMES ) {
+    		System.out.println( "Time taken to search: " + (System.currentTimeMillis() - startTime) );
+    	}
+    	return result;
+    }
+
+    /**
+     *   Searches the segments from..to-1, forking off half of them
+     *   until only one is left. The pool's threads are not interrupted
+     *   with the thread that started the search, so each segment checks
+     *   that thread before it is searched.
+     */
+    private class SegmentSearch extends RecursiveAction {
+    	private static final long serialVersionUID = 1L;
+
+    	private final Query query;
+    	private final int queryType, structureType, k;
+    	private final Thread caller;
+    	private final PostingsList[] parts;
+    	private final int from, to;
+
+    	SegmentSearch( Query query, int queryType, int structureType, int k, Thread caller, PostingsList[] parts, int from, int to ) {
+    		this.query = query;
+    		this.queryType = queryType;
+    		this.structureType = structureType;
+    		this.k = k;
+    		this.caller = caller;
+    		this.parts = parts;
+    		this.from = from;
+    		this.to = to;
+    	}
+
+    	protected void compute() {
+    		if ( to - from == 1 ) {
+    			if ( caller.isInterrupted() ) {
+    				throw new CancellationException( "search interrupted" );
+    			}
+    			parts[from] = new Searcher( segments[from], IndexSnapshot.this, caller ).evaluate( query, queryType, structureType, k );
+    		}
+    		else if ( to > from ) {
+    			int mid = ( from + to ) >>> 1;
+    			invokeAll( new SegmentSearch( query, queryType, structureType, k, caller, parts, from, mid ),
+    					   new SegmentSearch( query, queryType, structureType, k, caller, parts, mid, to ));
+    		}
+    	}
+    }
+
+    /**
+     *  Merges the results of the segments. Ranked results are ordered
+     *  by score like those of a single index, the others by docID. If
+     *  no segment has a result, as for a single unknown term, the
+     *  result is null.
+     */
+    static PostingsList merge( PostingsList[] parts, int queryType, int k ) {
+    	ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
+    	for ( PostingsList part : parts ) {
+    		if ( part != null ) {
+    			lists.add( part );
+    		}
+    	}
+    	if ( lists.isEmpty() ) {
+    		return parts.length == 0 ? new PostingsList() : null;
+    	}
+    	if ( lists.size() == 1 ) {
+    		return lists.get( 0 );
+    	}
+    	if ( queryType == Index.RANKED_QUERY ) {
+    		if ( k == Integer.MAX_VALUE ) {
+    			PostingsList result = new PostingsList();
+    			for ( PostingsList part : lists ) {
+    				for ( int i=0; i<part.size(); i++ ) {
+    					result.add( part.getDocID( i ), part.getScore( i ));
+    				}
+    			}
+    			result.sort();
+    			return result;
+    		}
+    		int total = 0;
+    		for ( PostingsList part : lists ) {
+    			total += part.size();
+    		}
+    		TopKCollector top = new TopKCollector( Math.min( k, total ));
+    		for ( PostingsList part : lists ) {
+    			for ( int i=0; i<part.size(); i++ ) {
+    				top.collect( part.getDocID( i ), part.getScore( i ));
+    			}
+    		}
+    		return top.toPostingsList();
+    	}
+    	return union( lists );
+    }
+
+    /**
+     *  Merges lists with disjoint docIDs into one list in docID order,
+     *  keeping the positions.
+     */
+    private static PostingsList union( ArrayList<PostingsList> lists ) {
+    	PostingsList result = new PostingsList();
+    	PostingsList.Cursor[] cursors = new PostingsList.Cursor[lists.size()];
+    	boolean[] more = new boolean[cursors.length];
+    	for ( int i=0; i<cursors.length; i++ ) {
+    		cursors[i] = lists.get( i ).getCursor();
+    		more[i] = cursors[i].next();
+    		result.updateMaxWeight( lists.get( i ).getMaxWeight() );
+    	}
+    	while ( true ) {
+    		int min = -1;
+    		for ( int i=0; i<cursors.length; i++ ) {
+    			if ( more[i] && ( min < 0 || cursors[i].getDocID() < cursors[min].getDocID() )) {
+    				min = i;
+    			}
+    		}
+    		if ( min < 0 ) {
+    			return result;
+    		}
+    		PostingsList.Cursor c = cursors[min];
+    		result.add( c.getDocID() );
+    		for ( int j=0; j<c.getTermFrequency(); j++ ) {
+    			result.add( c.getDocID(), c.getPosition( j ));
+    		}
+    		more[min] = c.next();
+    	}
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  Returns the postings of @code{token} in all segments as one
+     *  list, including those of deleted documents, or null if no
+     *  segment has the term.
+     */
+    public PostingsList getPostings( String token ) {
+    	ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
+    	for ( Index segment : segments ) {
+    		PostingsList pl = segment.getPostings( token );
+    		if ( pl != null ) {
+    			lists.add( pl );
+    		}
+    	}
+    	if ( lists.isEmpty() ) {
+    		return null;
+    	}
+    	return lists.size() == 1 ? lists.get( 0 ) : union( lists );
+    }
+
+    /**
+     *  Returns the postings of a termID of the snapshot, see getTermID().
+     */
+    public PostingsList getPostings( int termID ) {
+    	String[] t = getTerms();
+    	return termID >= 0 && termID < t.length ? getPostings( t[termID] ) : null;
+    }
+
+    /**
+     *  Returns the termID of a term, its position among the sorted
+     *  terms of all segments, or -1 if no segment has the term.
+     */
+    public int getTermID( String token ) {
+    	int i = Arrays.binarySearch( getTerms(), token );
+    	return i >= 0 ? i : -1;
+    }
+
+    public String getTerm( int termID ) {
+    	return getTerms()[termID];
+    }
+
+    public int getDocumentFrequency( int termID ) {
+    	String[] t = getTerms();
+    	return termID >= 0 && termID < t.length ? getDocumentFrequency( t[termID] ) : 0;
+    }
+
+    /**
+     *  Iterates over the terms of all segments in sorted order.
+     */
+    public Iterator<String> getDictionary() {
+    	return Arrays.asList( getTerms() ).iterator();
+    }
+
+    private synchronized String[] getTerms() {
+    	if ( terms == null ) {
+    		HashSet<String> all = new HashSet<String>();
+    		for ( Index segment : segments ) {
+    			Iterator<String> it = segment.getDictionary();
+    			while ( it.hasNext() ) {
+    				all.add( it.next() );
+    			}
+    		}
+    		terms = all.toArray( new String[all.size()] );
+    		Arrays.sort( terms );
+    	}
+    	return terms;
+    }
+
+    /**
+     *  Returns the live documents of all segments.
+     */
+    public synchronized DocumentStore getDocuments() {
+    	if ( documents == null ) {
+    		loadDocuments();
+    	}
+    	return documents;
+    }
+
+    /**
+     *  Returns the lengths and norms of the live documents, and the
+     *  idf of the snapshot's termIDs.
+     */
+    public synchronized RankingStatistics getStatistics() {
+    	if ( stats == null ) {
+    		loadDocuments();
+    	}
+    	return stats;
+    }
+
+    private void loadDocuments() {
+    	documents = new DocumentStore();
+    	stats = new RankingStatistics( this );
+    	for ( Index segment : segments ) {
+    		DocumentStore docs = segment.getDocuments();
+    		RankingStatistics segmentStats = segment.getStatistics();
+    		for ( int d=docs.nextDocID( 0 ); d>=0; d=docs.nextDocID( d+1 )) {
+    			if ( !deleted.get( d )) {
+    				String path = docs.getPath( d );
+    				documents.add( d, path == null ? "" : path );
+    				documents.setLength( d, docs.getLength( d ));
+    				stats.addDocument( d, docs.getLength( d ), segmentStats.getEuclideanNorm( d ));
+    			}
+    		}
+    	}
+    }
+
+    /**
+     *  Returns the tf of each term in a document, from the segment
+     *  that holds it, or null if that segment keeps no document vectors.
+     */
+    public HashMap<String, Integer> getDocument( int docID ) {
+    	int s = segmentOf( docID );
+    	return s < 0 || deleted.get( docID ) ? null : segments[s].getDocument( docID );
+    }
+
+    /**
+     *  The segments have one forward index each, there is none for
+     *  the snapshot as a whole.
+     */
+    public ForwardIndex getForwardIndex() {
+    	return null;
+    }
+
+    public Index getSnapshot() {
+    	return this;
+    }
+
+    /**  A snapshot cannot be changed.  */
+    public void insert( String token, int docID, int offset ) {
+    	throw new UnsupportedOperationException( "IndexSnapshot is read-only" );
+    }
+
+    /**  A snapshot cannot be changed.  */
+    public void insert( int termID, int docID, int offset ) {
+    	throw new UnsupportedOperationException( "IndexSnapshot is read-only" );
+    }
+
+    /**  A snapshot cannot be changed, so it has no dictionary to add terms to.  */
+    public TermDictionary getTermDictionary() {
+    	throw new UnsupportedOperationException( "IndexSnapshot is read-only" );
+    }
+
+    /**  A snapshot cannot be changed.  */
+    public void finishDocument( int docID, int length ) {
+    	throw new UnsupportedOperationException( "IndexSnapshot is read-only" );
+    }
+
+    /**  A snapshot cannot be changed.  */
+    public void delete( int docID ) {
+    	throw new UnsupportedOperationException( "IndexSnapshot is read-only" );
+    }
+
+    /**  Everything in a snapshot is already visible.  */
+    public void flush() {
+    }
+
+    /**  Nothing to write back.  */
+    public void cleanup() {
+    }
+}
@@ -11,30 +11,98 @@ package ir;
 
 import java.io.File;
 import java.io.Reader;
-import java.io.FileReader;
-import java.io.StringReader;
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
-import org.apache.pdfbox.cos.COSDocument;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.pdfbox.pdfparser.*;
-import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 
 /**
  *   Processes a directory structure and indexes all PDF and text files.
+ *
+ *   Indexing runs as a pipeline: a walker thread lists the files and
+ *   assigns docIDs, a pool of workers parses and tokenizes them into
+ *   ParsedDocuments, and the calling thread merges those into the
+ *   index in docID order.
  */
 public class Indexer {
 
     /** The index to be built up by this indexer. */
     public Index index;
     
+    /** The files that have been indexed, used to skip unchanged files. */
+    public FileCatalog catalog = new FileCatalog();
+
+    /** Text extracted from PDF files before, or null to always parse them. */
+    public TextCache textCache = new TextCache( new File( TextCache.CACHE_DIR ));
+    
     /** The next docID to be generated. */
     private int lastDocID = 0;
 
+    /** Number of parse-and-tokenize worker threads. */
+    private int workers;
+
+    /** Maximum number of documents being parsed or waiting to be merged. */
+    private int maxInFlight;
+
+    /** Time a document may take to parse, in milliseconds, or 0 for no limit. */
+    public static long PARSE_TIMEOUT = 60000;
+
+    /** Number of tokens a document may have. */
+    public static int MAX_TOKENS = 10000000;
+
+    /**
+     *  Size in bytes a PDF file may have. PDFBox holds all objects of a
+     *  document on the heap while it is read, several times the size of
+     *  the file, so larger files are quarantined without being parsed.
+     *  Text files are tokenized as they are read and need no limit.
+     */
+    public static long MAX_PDF_BYTES = 100L << 20;
+
+    /**
+     *  Number of parser threads that may be left stuck in files that
+     *  were given up on. Once that many are, the remaining files are
+     *  not parsed at all.
+     */
+    public static int MAX_STUCK_PARSERS = 8;
+
+    /**
+     *  Runs the parsing for the workers, so that they can give up on it.
+     *  It has a thread for each worker and each parser that may be stuck.
+     */
+    private final ThreadPoolExecutor parsers = new ThreadPoolExecutor( 0, 1, 60L, TimeUnit.SECONDS,
+    								    new SynchronousQueue<Runnable>(), r -> {
+    	Thread t = new Thread( r, "indexer-parser" );
+    	t.setDaemon( true );
+    	return t;
+    });
+
+    /** Number of parser threads still busy with a file that was given up on. */
+    private final AtomicInteger stuckParsers = new AtomicInteger();
+
+    /** Marks the end of the work queue for a worker. */
+    private static final ParsedDocument NO_MORE_FILES = new ParsedDocument( -1, null );
+
 
     /* ----------------------------------------------- */
 
@@ -54,10 +122,51 @@ public class Indexer {
 
 
     /**
-     *  Initializes the index as a HashedIndex.
+     *  Initializes the index as a SegmentedIndex, with one worker per
+     *  available processor.
      */
     public Indexer() {
-    	index = new HashedIndex();
+    	this( Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     *  Initializes the index as a SegmentedIndex, parsing documents with
+     *  the given number of worker threads.
+     */
+    public Indexer( int workers ) {
+    	index = new SegmentedIndex();
+    	setWorkers( workers );
+    }
+
+    /**
+     *  Opens an index saved in @code{dir}, together with its file catalog.
+     *  A writable index is opened as a SegmentedIndex, which processFiles
+     *  can update while it is searched, see SegmentedIndex.load();
+     *  otherwise the segment is served from disk as a DiskIndex.
+     */
+    public void open( File dir, boolean writable ) throws IOException {
+    	index = writable ? SegmentedIndex.load( dir ) : new DiskIndex( dir );
+    	catalog = FileCatalog.load( dir );
+    	DocumentStore documents = index.getDocuments();
+    	for ( int d=documents.nextDocID( 0 ); d>=0; d=documents.nextDocID( d+1 )) {
+    		lastDocID = Math.max( lastDocID, d + 1 );
+    	}
+    }
+
+    /**
+     *  Saves the file catalog next to the saved index in @code{dir}.
+     */
+    public void saveCatalog( File dir ) throws IOException {
+    	catalog.save( dir );
+    }
+
+    /**
+     *  Sets the number of worker threads used by processFiles.
+     */
+    public void setWorkers( int workers ) {
+    	this.workers = Math.max( 1, workers );
+    	this.maxInFlight = 4 * this.workers;
+    	parsers.setMaximumPoolSize( this.workers + MAX_STUCK_PARSERS );
     }
 
 
@@ -67,77 +176,354 @@ public class Indexer {
     /**
      *  Tokenizes and indexes the file @code{f}. If @code{f} is a directory,
      *  all its files and subdirectories are recursively processed.
+     *
+     *  Files whose size and modification time match the catalog are
+     *  skipped. Changed files are indexed under a new docID and their old
+     *  document is deleted along with it, as is every cataloged file under
+     *  @code{f} that no longer exists. Everything is published to searches
+     *  with index.flush() at the end, and, for a SegmentedIndex, every
+     *  FLUSH_DOCUMENTS documents on the way. The quarantined files under
+     *  @code{f} are listed on stderr when it is done.
+     *
+     *  Files get their docIDs in the order of a sorted directory walk,
+     *  whatever the number of workers. At most @code{maxInFlight} documents
+     *  are parsed or waiting to be merged at any time, so a slow merge
+     *  holds back the walker instead of filling the heap.
      */
     public void processFiles( File f ) {
+    	final BlockingQueue<ParsedDocument> files = new ArrayBlockingQueue<ParsedDocument>( maxInFlight );
+    	final BlockingQueue<ParsedDocument> parsed = new LinkedBlockingQueue<ParsedDocument>();
+    	final Semaphore inFlight = new Semaphore( maxInFlight );
+    	final int firstDocID = lastDocID;
+    	final HashSet<String> seen = new HashSet<String>();
+
+    	Thread walker = new Thread( () -> {
+    		try {
+    			walk( f, files, inFlight, seen );
+    			// The end marker carries the first docID that was not handed out
+    			parsed.put( new ParsedDocument( lastDocID, null ));
+    			for ( int i=0; i<workers; i++ ) {
+    				files.put( NO_MORE_FILES );
+    			}
+    		}
+    		catch ( InterruptedException e ) {
+    			Thread.currentThread().interrupt();
+    		}
+    	}, "indexer-walker" );
+
+    	Thread[] pool = new Thread[workers];
+    	for ( int i=0; i<workers; i++ ) {
+    		pool[i] = new Thread( () -> {
+    			try {
+    				ParsedDocument doc;
+    				while (( doc = files.take() ) != NO_MORE_FILES ) {
+    					parsed.put( parseWithTimeout( doc ));
+    				}
+    			}
+    			catch ( InterruptedException e ) {
+    				Thread.currentThread().interrupt();
+    			}
+    		}, "indexer-worker-" + i );
+    	}
+
+    	walker.start();
+    	for ( Thread t : pool ) {
+    		t.start();
+    	}
+    	try {
+    		merge( parsed, inFlight, firstDocID );
+    		walker.join();
+    		for ( Thread t : pool ) {
+    			t.join();
+    		}
+    		for ( String path : catalog.getPaths( f )) {
+    			if ( !seen.contains( path )) {
+    				index.delete( catalog.remove( path ).docID );
+    			}
+    		}
+    		index.flush();
+    		reportQuarantined( f );
+    	}
+    	catch ( InterruptedException e ) {
+    		walker.interrupt();
+    		for ( Thread t : pool ) {
+    			t.interrupt();
+    		}
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+
+    /**
+     *  Lists the quarantined files under @code{f} on stderr, with the
+     *  reasons they were given up on.
+     */
+    private void reportQuarantined( File f ) {
+    	TreeMap<String,String> quarantined = catalog.getQuarantined();
+    	quarantined.keySet().retainAll( catalog.getPaths( f ));
+    	if ( !quarantined.isEmpty() ) {
+    		System.err.println( quarantined.size() + " files under " + f + " are quarantined:" );
+    		for ( Map.Entry<String,String> e : quarantined.entrySet() ) {
+    			System.err.println( "  " + e.getKey() + ": " + e.getValue() );
+    		}
+    	}
+    }
+
+
+    /**
+     *  Walks the directory structure in sorted order, assigns a docID to
+     *  every new or changed file and hands it to the workers. The paths
+     *  walked are added to @code{seen}.
+     */
+    private void walk( File f, BlockingQueue<ParsedDocument> files, Semaphore inFlight,
+    				   HashSet<String> seen ) throws InterruptedException {
 		// do not try to index fs that cannot be read
 		if ( f.canRead() ) {
 		    if ( f.isDirectory() ) {
 		    	String[] fs = f.list();
 				// an IO error could occur
 				if ( fs != null ) {
+					Arrays.sort( fs );
 				    for ( int i=0; i<fs.length; i++ ) {
-					processFiles( new File( f, fs[i] ));
+						walk( new File( f, fs[i] ), files, inFlight, seen );
 				    }
 				}
 		    } 
 		    else {
-				int docID = generateDocID();
-				index.docIDs.put( "" + docID, f.getPath() );
+		    	String path = f.getPath();
+		    	seen.add( path );
+		    	FileCatalog.Entry old = catalog.get( path );
+		    	if ( old != null && old.isCurrent( f )) {
+		    		return;
+		    	}
+		    	int docID = generateDocID();
+		    	catalog.put( path, docID, f.length(), f.lastModified() );
+		    	ParsedDocument doc = new ParsedDocument( docID, path );
+		    	doc.replaces = old != null ? old.docID : -1;
+		    	inFlight.acquire();
+				files.put( doc );
+		    }
+		}
+    }
+
+
+    /**
+     *  Parses and tokenizes one file in a parser thread, and gives up
+     *  on it after PARSE_TIMEOUT. A file given up on is quarantined,
+     *  and an empty document takes its place, since the parser may
+     *  still be adding to the one it has. Once MAX_STUCK_PARSERS
+     *  parsers are still busy with files given up on, files are no
+     *  longer parsed, see notParsed(). Run by the workers.
+     */
+    private ParsedDocument parseWithTimeout( final ParsedDocument doc ) throws InterruptedException {
+    	if ( PARSE_TIMEOUT <= 0 ) {
+    		parse( doc );
+    		return doc;
+    	}
+    	// Whichever of the parser and the worker gets here first decides if the parser was stuck
+    	final AtomicBoolean over = new AtomicBoolean();
+    	Runnable task = () -> {
+    		try {
+    			parse( doc );
+    		}
+    		finally {
+    			if ( !over.compareAndSet( false, true )) {
+    				stuckParsers.decrementAndGet();
+    			}
+    		}
+    	};
+    	Future<?> parsing = null;
+    	while ( parsing == null ) {
+    		if ( stuckParsers.get() >= MAX_STUCK_PARSERS ) {
+    			return notParsed( doc );
+    		}
+    		try {
+    			parsing = parsers.submit( task );
+    		}
+    		catch ( RejectedExecutionException e ) {
+    			// With fewer than MAX_STUCK_PARSERS stuck there is a thread for
+    			// every worker, but one that just finished may not take tasks yet
+    			Thread.sleep( 1 );
+    		}
+    	}
+    	try {
+    		parsing.get( PARSE_TIMEOUT, TimeUnit.MILLISECONDS );
+    		return doc;
+    	}
+    	catch ( TimeoutException e ) {
+    		// A parser stuck in PDFBox does not notice the interrupt, it is left to finish
+    		parsing.cancel( true );
+    		if ( over.compareAndSet( false, true )) {
+    			stuckParsers.incrementAndGet();
+    		}
+    		ParsedDocument empty = new ParsedDocument( doc.docID, doc.path );
+    		empty.replaces = doc.replaces;
+    		quarantine( empty, "parsing took more than " + PARSE_TIMEOUT + " ms" );
+    		return empty;
+    	}
+    	catch ( ExecutionException e ) {
+    		quarantine( doc, String.valueOf( e.getCause() ));
+    		return doc;
+    	}
+    }
+
+    /**
+     *  Indexes a document empty without parsing it, because the parser
+     *  threads are all stuck. It is not the file's fault, so the catalog
+     *  gets a size that no file has, and the next processFiles parses it.
+     */
+    private ParsedDocument notParsed( ParsedDocument doc ) {
+    	doc.ok = false;
+    	catalog.put( doc.path, doc.docID, -1, -1 );
+    	System.err.println( "Not parsed, " + MAX_STUCK_PARSERS + " parsers are stuck: " + doc.path );
+    	return doc;
+    }
+
+    /**
+     *  Gives up on a document: it is indexed empty, and the catalog
+     *  keeps it from being parsed again until the file changes.
+     */
+    private void quarantine( ParsedDocument doc, String problem ) {
+    	doc.ok = false;
+    	catalog.quarantine( doc.path, problem );
+    	System.err.println( "Quarantined " + doc.path + ": " + problem );
+    }
+
+    /**
+     *  Parses and tokenizes one file. A PDF file larger than
+     *  MAX_PDF_BYTES, and a document with more than MAX_TOKENS tokens,
+     *  is quarantined.
+     */
+    private void parse( ParsedDocument doc ) {
+		try {
+		    // The file is opened once, and its first bytes tell its type
+		    SourceFile source = SourceFile.read( new File( doc.path ));
+		    Reader reader;
+		    if ( source.isPDF() ) {
+				if ( source.size() > MAX_PDF_BYTES ) {
+				    throw new IOException( "PDF file larger than " + MAX_PDF_BYTES + " bytes" );
+				}
 				try {
-				    Reader reader = new FileReader( f );
-				    char[] buf = new char[4];
-				    reader.read( buf, 0, 4 );
-				    if ( buf[0] == '%' && buf[1]=='P' && buf[2]=='D' && buf[3]=='F' ) {
-						try {
-						    String contents = extractPDFContents( f );
-						    reader = new StringReader( contents );
-						}
-						catch ( IOException e ) {
-						    reader = new FileReader( f );
-						}
-				    }
-				    else {
-						reader = new FileReader( f );
-				    }
-				    SimpleTokenizer tok = new SimpleTokenizer( reader );
-				    int offset = 0;
-				    while ( tok.hasMoreTokens() ) {
-						String token = tok.nextToken();
-						insertIntoIndex( docID, token, offset++ ); // This is where we index
-				    }
-				    index.docLengths.put( "" + docID, offset );
-				    reader.close();
+				    reader = openPDFContents( source );
 				}
 				catch ( IOException e ) {
-				    e.printStackTrace();
+				    reader = source.openText();
 				}
 		    }
+		    else {
+				reader = source.openText();
+		    }
+		    SimpleTokenizer tok = new SimpleTokenizer( reader );
+		    try {
+				while ( tok.nextTerm() ) {
+				    if ( doc.length >= MAX_TOKENS ) {
+				    	throw new IOException( "more than " + MAX_TOKENS + " tokens" );
+				    }
+				    doc.add( tok.getTermBuffer(), tok.getTermLength() );
+				}
+		    }
+		    finally {
+				// A PDF is only cached if all of it was read
+				reader.close();
+		    }
 		}
+		catch ( IOException | RuntimeException | OutOfMemoryError e ) {
+			// Report the file and carry on, so the merge stage is never left waiting.
+			// MAX_PDF_BYTES keeps most files from running out of memory, and what
+			// one still ran out of memory on is garbage once it is given up on.
+			if ( Thread.currentThread().isInterrupted() ) {
+				// parseWithTimeout gave up on it and quarantined it with the timeout,
+				// which whatever failed after the interrupt must not overwrite
+				return;
+			}
+		    quarantine( doc, String.valueOf( e ));
+		}
+    }
+
+
+    /**
+     *  Merges parsed documents into the index in docID order, until the
+     *  walker's end marker is reached. Documents that arrive early wait
+     *  in a reorder buffer, which the in-flight limit keeps small.
+     */
+    private void merge( BlockingQueue<ParsedDocument> parsed, Semaphore inFlight, int nextDocID ) throws InterruptedException {
+    	HashMap<Integer,ParsedDocument> waiting = new HashMap<Integer,ParsedDocument>();
+    	int endDocID = -1;
+    	while ( endDocID < 0 || nextDocID < endDocID ) {
+    		ParsedDocument doc = parsed.take();
+    		if ( doc.path == null ) {
+    			endDocID = doc.docID;
+    			continue;
+    		}
+    		waiting.put( doc.docID, doc );
+    		while (( doc = waiting.remove( nextDocID )) != null ) {
+    			insertDocument( doc );
+    			inFlight.release();
+    			nextDocID++;
+    		}
+    	}
     }
 
     
     /* ----------------------------------------------- */
 
 
+    /* ----------------------------------------------- */
+
+
     /**
-     *  Extracts the textual contents from a PDF file as one long string.
+     *  Opens a Reader over the textual contents of a PDF file. The text
+     *  is taken from the textCache if the file has been extracted
+     *  before, and is otherwise extracted a page at a time as it is
+     *  read, and cached on the way.
      */
-    public String extractPDFContents( File f ) throws IOException {
-		FileInputStream fi = new FileInputStream( f );
-		PDFParser parser = new PDFParser( fi );   
-		parser.parse();   
-		fi.close();
-		COSDocument cd = parser.getDocument();   
-		PDFTextStripper stripper = new PDFTextStripper();   
-		String result = stripper.getText( new PDDocument( cd ));  
-		cd.close();
-		return result;
+    public Reader openPDFContents( SourceFile source ) throws IOException {
+    	String key = null;
+    	if ( textCache != null ) {
+    		key = TextCache.key( source.getBytes() );
+    		Reader cached = textCache.open( key );
+    		if ( cached != null ) {
+    			return cached;
+    		}
+    	}
+		PDFParser parser = new PDFParser( source.openStream() );
+		parser.parse();
+		PDDocument document = new PDDocument( parser.getDocument() );
+		try {
+			return new PDFTextReader( document, key == null ? null : textCache.create( key ));
+		}
+		catch ( IOException | RuntimeException e ) {
+			document.close();
+			throw e;
+		}
     }
 
 
     /* ----------------------------------------------- */
 
 
+    /**
+     *  Indexes all tokens of a parsed document.
+     */
+    public void insertDocument( ParsedDocument doc ) {
+    	index.getDocuments().add( doc.docID, doc.path );
+    	if ( doc.ok ) {
+    		TermDictionary terms = index.getTermDictionary();
+    		for ( int i=0; i<doc.size(); i++ ) {
+    			int termID = doc.addTerm( terms, i );
+    			for ( int j=0; j<doc.getTermFrequency( i ); j++ ) {
+    				index.insert( termID, doc.docID, doc.getPosition( i, j ));
+    			}
+    		}
+    	}
+    	// Unreadable documents are finished empty, so that they still count in N
+    	index.finishDocument( doc.docID, doc.ok ? doc.length : 0 );
+    	if ( doc.replaces >= 0 ) {
+    		index.delete( doc.replaces );
+    	}
+    }
+
+
     /**
      *  Indexes one token.
      */
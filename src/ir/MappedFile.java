@@ -0,0 +1,81 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ *   A read-only file mapped into memory. Files larger than one
+ *   MappedByteBuffer can address are mapped in several chunks, and
+ *   values are read by absolute long offsets.
+ */
+public class MappedFile {
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final MappedByteBuffer[] chunks;
+    private final long length;
+
+
+    public MappedFile( File f ) throws IOException {
+    	try ( RandomAccessFile raf = new RandomAccessFile( f, "r" );
+    		  FileChannel channel = raf.getChannel() ) {
+    		length = channel.size();
+    		chunks = new MappedByteBuffer[(int) (( length + CHUNK_SIZE - 1 ) >>> CHUNK_BITS )];
+    		for ( int i=0; i<chunks.length; i++ ) {
+    			long start = (long) i << CHUNK_BITS;
+    			chunks[i] = channel.map( FileChannel.MapMode.READ_ONLY, start, Math.min( CHUNK_SIZE, length - start ));
+    		}
+    	}
+    }
+
+    public long length() {
+    	return length;
+    }
+
+    public byte getByte( long pos ) {
+    	return chunks[(int) ( pos >>> CHUNK_BITS )].get( (int) ( pos & CHUNK_MASK ));
+    }
+
+    public int getInt( long pos ) {
+    	int i = (int) ( pos & CHUNK_MASK );
+    	MappedByteBuffer chunk = chunks[(int) ( pos >>> CHUNK_BITS )];
+    	if ( i + 4 <= chunk.limit() ) {
+    		return chunk.getInt( i );
+    	}
+    	return (( getByte( pos ) & 0xFF ) << 24 ) | (( getByte( pos+1 ) & 0xFF ) << 16 )
+    		| (( getByte( pos+2 ) & 0xFF ) << 8 ) | ( getByte( pos+3 ) & 0xFF );
+    }
+
+    public long getLong( long pos ) {
+    	return (( getInt( pos ) & 0xFFFFFFFFL ) << 32 ) | ( getInt( pos+4 ) & 0xFFFFFFFFL );
+    }
+
+    public double getDouble( long pos ) {
+    	return Double.longBitsToDouble( getLong( pos ));
+    }
+
+    public void getBytes( long pos, byte[] dst ) {
+    	int done = 0;
+    	while ( done < dst.length ) {
+    		ByteBuffer chunk = chunks[(int) ( pos >>> CHUNK_BITS )].duplicate();
+    		int i = (int) ( pos & CHUNK_MASK );
+    		int n = Math.min( dst.length - done, chunk.limit() - i );
+    		chunk.position( i );
+    		chunk.get( dst, done, n );
+    		done += n;
+    		pos += n;
+    	}
+    }
+}
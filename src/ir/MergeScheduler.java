@@ -0,0 +1,160 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.BitSet;
+
+
+/**
+ *   Merges the segments of a SegmentedIndex in a background thread.
+ *
+ *   The index calls maybeMerge() after it has published a segment,
+ *   and the merge thread asks the TieredMergePolicy for merges until
+ *   there are none left. A merge reads an IndexSnapshot of the chosen
+ *   segments, copies their live documents into a new HashedIndex, and
+ *   has the index swap it in for them. Searches go on meanwhile on
+ *   the snapshots published before.
+ *
+ *   The merge thread runs at the lowest priority and copies at most
+ *   MAX_POSITIONS_PER_SECOND positions per second, so that merging
+ *   does not starve the searches of CPU and memory bandwidth.
+ */
+public class MergeScheduler {
+
+    /** Rate limit of the merge thread, in positions copied per second. */
+    public static double MAX_POSITIONS_PER_SECOND = 20e6;
+
+    private final SegmentedIndex index;
+
+    private final TieredMergePolicy policy = new TieredMergePolicy();
+
+    /** The merge thread, started with the first merge. */
+    private Thread thread;
+
+    /** True if the index has changed since the policy was last asked. */
+    private boolean pending = false;
+
+    /** True while the merge thread is working. */
+    private boolean merging = false;
+
+    /** When the current merge started, and the positions it has copied. */
+    private long start;
+    private long copied;
+
+
+    public MergeScheduler( SegmentedIndex index ) {
+    	this.index = index;
+    }
+
+    /**
+     *  Tells the merge thread that the segments have changed.
+     */
+    public synchronized void maybeMerge() {
+    	pending = true;
+    	if ( thread == null ) {
+    		thread = new Thread( this::run, "segment-merger" );
+    		thread.setDaemon( true );
+    		thread.setPriority( Thread.MIN_PRIORITY );
+    		thread.start();
+    	}
+    	notifyAll();
+    }
+
+    /**
+     *  True if merges are running or about to.
+     */
+    public synchronized boolean isBusy() {
+    	return pending || merging;
+    }
+
+    /**
+     *  Waits until no merges are left to do.
+     */
+    public synchronized void waitForMerges() throws InterruptedException {
+    	while ( pending || merging ) {
+    		wait();
+    	}
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    private void run() {
+    	try {
+    		while ( true ) {
+    			synchronized ( this ) {
+    				while ( !pending ) {
+    					wait();
+    				}
+    				pending = false;
+    				merging = true;
+    			}
+    			try {
+    				Index[] segments;
+    				while (( segments = policy.findMerge( index.getSnapshot() )) != null ) {
+    					merge( segments );
+    				}
+    			}
+    			catch ( RuntimeException e ) {
+    				// Leave the segments as they are until the index changes again
+    				e.printStackTrace();
+    			}
+    			finally {
+    				synchronized ( this ) {
+    					merging = false;
+    					notifyAll();
+    				}
+    			}
+    		}
+    	}
+    	catch ( InterruptedException e ) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+    /**
+     *  Merges @code{segments} into one and swaps it in for them.
+     */
+    private void merge( Index[] segments ) throws InterruptedException {
+    	IndexSnapshot snapshot = index.getSnapshot();
+    	IndexSnapshot source = new IndexSnapshot( segments, snapshot.getDeleted(), snapshot.getGeneration() );
+    	start = System.nanoTime();
+    	copied = 0;
+    	HashedIndex merged = HashedIndex.copyOf( source, null, this::throttle );
+    	if ( Thread.interrupted() ) {
+    		throw new InterruptedException();
+    	}
+    	// The documents that were deleted when the merge started are gone now
+    	BitSet purged = new BitSet();
+    	BitSet deleted = snapshot.getDeleted();
+    	for ( int d=deleted.nextSetBit( 0 ); d>=0; d=deleted.nextSetBit( d+1 )) {
+    		for ( Index segment : segments ) {
+    			if ( segment.getDocuments().contains( d )) {
+    				purged.set( d );
+    			}
+    		}
+    	}
+    	index.replaceSegments( segments, merged, purged );
+    }
+
+    /**
+     *  Sleeps for as long as the merge is ahead of the rate limit.
+     */
+    private void throttle( int positions ) {
+    	copied += positions;
+    	long due = (long)( copied / MAX_POSITIONS_PER_SECOND * 1e9 );
+    	long ahead = due - ( System.nanoTime() - start );
+    	if ( ahead > 1000000 ) {
+    		try {
+    			Thread.sleep( ahead / 1000000 );
+    		}
+    		catch ( InterruptedException e ) {
+    			Thread.currentThread().interrupt();
+    		}
+    	}
+    }
+}
@@ -0,0 +1,147 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.COSObjectable;
+import org.apache.pdfbox.util.PDFTextStripper;
+
+
+/**
+ *   Reads the text of a PDF document, one page at a time.
+ *
+ *   The next page is extracted only when the text of the one before
+ *   has been read, so however long the document is, no more than one
+ *   page of text is held at once. A SimpleTokenizer reading from it
+ *   sees one stream of characters, and numbers the tokens straight on
+ *   across the pages.
+ *
+ *   The page tree is walked once, and each page is then extracted on
+ *   its own. Asking the PDFTextStripper for one page at a time with
+ *   setStartPage() would walk all pages for every one of them.
+ *
+ *   The text can be copied to a Writer as it is extracted, which is
+ *   how the TextCache is filled. The copy is only closed if the whole
+ *   document was read, otherwise it is discarded.
+ */
+public class PDFTextReader extends Reader {
+
+    private final PDDocument document;
+
+    private final PageStripper stripper;
+
+    /** Receives a copy of the text, or null. */
+    private final TextCache.Entry copy;
+
+    /** The text of the current page. Reused for every page. */
+    private final StringWriter page = new StringWriter();
+
+    /** The next page to extract, counting from 1. */
+    private int nextPage = 1;
+
+    /** Where in the current page the next character is read. */
+    private int ptr = 0;
+
+
+    /**
+     *  Reads the text of @code{document}, and closes the document when
+     *  it is closed.
+     */
+    public PDFTextReader( PDDocument document ) throws IOException {
+    	this( document, null );
+    }
+
+    /**
+     *  Reads the text of @code{document}, copying it to @code{copy}
+     *  unless that is null.
+     */
+    public PDFTextReader( PDDocument document, TextCache.Entry copy ) throws IOException {
+    	this.document = document;
+    	this.copy = copy;
+    	stripper = new PageStripper();
+    	// Only sets up the stripper, see PageStripper
+    	stripper.writeText( document, page );
+    }
+
+    public int read( char[] cbuf, int off, int len ) throws IOException {
+    	StringBuffer text = page.getBuffer();
+    	while ( ptr >= text.length() ) {
+    		if ( nextPage > stripper.pages.size() ) {
+    			return -1;
+    		}
+    		text.setLength( 0 );
+    		ptr = 0;
+    		stripper.extract( nextPage );
+    		nextPage++;
+    		if ( copy != null ) {
+    			copy.append( text );
+    		}
+    	}
+    	int n = Math.min( len, text.length() - ptr );
+    	text.getChars( ptr, ptr + n, cbuf, off );
+    	ptr += n;
+    	return n;
+    }
+
+    /**
+     *  Closes the document. The copy is kept if all pages were read,
+     *  and discarded otherwise.
+     */
+    public void close() throws IOException {
+    	boolean done = nextPage > stripper.pages.size() && ptr >= page.getBuffer().length();
+    	try {
+    		document.close();
+    	}
+    	finally {
+    		if ( copy != null && done ) {
+    			copy.close();
+    		}
+    		else if ( copy != null ) {
+    			copy.discard();
+    		}
+    	}
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *   A PDFTextStripper that keeps the list of pages that writeText()
+     *   gives it, instead of extracting them all, and then extracts
+     *   them one at a time to the Writer that writeText() was given.
+     */
+    private static class PageStripper extends PDFTextStripper {
+
+    	/** All pages of the document, once writeText() has been called. */
+    	List<COSObjectable> pages;
+
+    	PageStripper() throws IOException {
+    	}
+
+    	protected void processPages( List<COSObjectable> pages ) throws IOException {
+    		if ( this.pages == null ) {
+    			this.pages = pages;
+    		}
+    		else {
+    			super.processPages( pages );
+    		}
+    	}
+
+    	/**
+    	 *  Writes the text of page @code{n}, counting from 1. The pages
+    	 *  must be extracted in order.
+    	 */
+    	void extract( int n ) throws IOException {
+    		super.processPages( pages.subList( n - 1, n ));
+    	}
+    }
+}
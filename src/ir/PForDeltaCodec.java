@@ -0,0 +1,97 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *   Patched frame-of-reference coding of the gaps between values.
+ *
+ *   Gaps are coded in blocks of 128. Each block stores one bit width b,
+ *   chosen so that at most a tenth of the gaps need more than b bits,
+ *   and then all 128 gaps bit-packed with b bits. The gaps that did not
+ *   fit are patched afterwards as (index, high bits) exceptions. The
+ *   fixed-width blocks decode without branches per value. A last block
+ *   of fewer than 128 gaps is stored as varints.
+ */
+public class PForDeltaCodec implements PostingsCodec {
+
+    public static final int BLOCK_SIZE = 128;
+
+    /** Maximum number of exceptions in a block. */
+    private static final int MAX_EXCEPTIONS = BLOCK_SIZE / 10;
+
+    public int getId() {
+    	return PFOR_DELTA;
+    }
+
+    public String getName() {
+    	return "pfordelta";
+    }
+
+    public void encode( int[] values, int offset, int n, ByteArrayOutputStream out ) {
+    	int[] gaps = new int[BLOCK_SIZE];
+    	int[] widths = new int[33];
+    	int last = 0;
+    	int i = 0;
+    	for ( ; i + BLOCK_SIZE <= n; i += BLOCK_SIZE ) {
+    		java.util.Arrays.fill( widths, 0 );
+    		for ( int j=0; j<BLOCK_SIZE; j++ ) {
+    			gaps[j] = values[offset+i+j] - last;
+    			last = values[offset+i+j];
+    			widths[Codecs.bitWidth( gaps[j] )]++;
+    		}
+    		// The smallest width that leaves at most MAX_EXCEPTIONS gaps over
+    		int b = 32;
+    		int over = 0;
+    		while ( b > 0 && over + widths[b] <= MAX_EXCEPTIONS ) {
+    			over += widths[b];
+    			b--;
+    		}
+    		byte[] packed = new byte[BLOCK_SIZE * b / 8];
+    		Codecs.pack( gaps, 0, BLOCK_SIZE, b, packed, 0 );
+    		out.write( b );
+    		out.write( over );
+    		out.write( packed, 0, packed.length );
+    		for ( int j=0; j<BLOCK_SIZE; j++ ) {
+    			if ( Codecs.bitWidth( gaps[j] ) > b ) {
+    				out.write( j );
+    				Codecs.writeVarInt( gaps[j] >>> b, out );
+    			}
+    		}
+    	}
+    	for ( ; i<n; i++ ) {
+    		Codecs.writeVarInt( values[offset+i] - last, out );
+    		last = values[offset+i];
+    	}
+    }
+
+    public int decode( byte[] in, int pos, int[] values, int offset, int n ) {
+    	int[] p = { pos };
+    	int last = 0;
+    	int i = 0;
+    	for ( ; i + BLOCK_SIZE <= n; i += BLOCK_SIZE ) {
+    		int b = in[p[0]++];
+    		int exceptions = in[p[0]++];
+    		Codecs.unpack( in, 8L * p[0], b, values, offset+i, BLOCK_SIZE );
+    		p[0] += BLOCK_SIZE * b / 8;
+    		for ( int e=0; e<exceptions; e++ ) {
+    			int j = in[p[0]++] & 0xFF;
+    			values[offset+i+j] |= Codecs.readVarInt( in, p ) << b;
+    		}
+    		for ( int j=0; j<BLOCK_SIZE; j++ ) {
+    			last += values[offset+i+j];
+    			values[offset+i+j] = last;
+    		}
+    	}
+    	for ( ; i<n; i++ ) {
+    		last += Codecs.readVarInt( in, p );
+    		values[offset+i] = last;
+    	}
+    	return p[0];
+    }
+}
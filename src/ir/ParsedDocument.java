@@ -0,0 +1,90 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *   The tokens of one document, grouped by term. Built by the
+ *   indexing workers and merged into the index in docID order.
+ */
+public class ParsedDocument {
+
+    /** The docID assigned by the directory walker. */
+    public final int docID;
+
+    /** The path of the document. */
+    public final String path;
+
+    /** Number of tokens in the document. */
+    public int length = 0;
+
+    /** False if the document could not be read. */
+    public boolean ok = true;
+
+    /** The docID of the file's previous version, deleted when this one is indexed, or -1. */
+    public int replaces = -1;
+
+    /** The terms, numbered in the order they first occurred. */
+    private TermDictionary terms = new TermDictionary();
+
+    /** The positions of each term, and how many of them are used. */
+    private int[][] positions = new int[16][];
+    private int[] counts = new int[16];
+
+
+    public ParsedDocument( int docID, String path ) {
+    	this.docID = docID;
+    	this.path = path;
+    }
+
+    /**
+     *  Adds the next token of the document, which is in
+     *  buf[0] .. buf[termLength-1]. The buffer can be reused afterwards.
+     */
+    public void add( char[] buf, int termLength ) {
+    	int t = terms.add(buf, 0, termLength);
+    	if (t == positions.length) {
+    		positions = Arrays.copyOf(positions, t * 2);
+    		counts = Arrays.copyOf(counts, t * 2);
+    	}
+    	if (positions[t] == null) {
+    		positions[t] = new int[4];
+    	}
+    	if (counts[t] == positions[t].length) {
+    		positions[t] = Arrays.copyOf(positions[t], counts[t] * 2);
+    	}
+    	positions[t][counts[t]++] = length++;
+    }
+
+    /**  Number of distinct terms  */
+    public int size() {
+    	return terms.size();
+    }
+
+    public String getTerm( int i ) {
+    	return terms.getTerm(i);
+    }
+
+    /**
+     *  Returns the termID of the ith term in @code{dict}, adding it
+     *  there if it is new. No String is created.
+     */
+    public int addTerm( TermDictionary dict, int i ) {
+    	return dict.add(terms, i);
+    }
+
+    /**  The term frequency of the ith term  */
+    public int getTermFrequency( int i ) {
+    	return counts[i];
+    }
+
+    /**  The jth position of the ith term  */
+    public int getPosition( int i, int j ) {
+    	return positions[i][j];
+    }
+}
@@ -0,0 +1,38 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *   Compresses non-decreasing sequences of non-negative ints, such as
+ *   the docIDs of a postings list or the positions of one posting.
+ *   The length of a sequence is not stored, the caller has to know it.
+ */
+public interface PostingsCodec {
+
+    /* Codec ids, as stored in segments */
+    public static final int VARINT = 0;
+    public static final int PFOR_DELTA = 1;
+    public static final int ELIAS_FANO = 2;
+
+    public int getId();
+    public String getName();
+
+    /**
+     *  Appends values[offset] .. values[offset+n-1] to @code{out}.
+     */
+    public void encode( int[] values, int offset, int n, ByteArrayOutputStream out );
+
+    /**
+     *  Decodes n values from @code{in} starting at @code{pos} into
+     *  values[offset] .. values[offset+n-1], and returns the position
+     *  after the last byte read.
+     */
+    public int decode( byte[] in, int pos, int[] values, int offset, int n );
+
+}
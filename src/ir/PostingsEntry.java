@@ -9,14 +9,17 @@
 package ir;
 
 import java.io.Serializable;
-import java.util.LinkedList;
-import java.util.ListIterator;
 
+/**
+ *   A single posting, as handed out by PostingsList.get(). The
+ *   index itself stores postings in primitive arrays, so a
+ *   PostingsEntry is a copy and changing it does not alter the index.
+ */
 public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
     
     public int docID;
     public double score;
-    private LinkedList<Integer> positions = new LinkedList<Integer>();
+    private int[] positions;
     
     /**
      * Construct a PostingsEntry for doc
@@ -24,18 +27,17 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
      * @param docID
      */
     PostingsEntry(int docID) {
-    	this.docID = docID;
+    	this(docID, new int[0]);
     }
     /**
-     * Creates a new PostingsEntry containing one position from the start in the
-     * list of positions for the words
+     * Creates a new PostingsEntry with the given positions
      * 
      * @param docID - Document ID
-     * @param pos - First position of word in doc
+     * @param positions - Positions of the word in doc, in increasing order
      */
-    PostingsEntry(int docID, int pos) {
+    PostingsEntry(int docID, int[] positions) {
     	this.docID = docID;
-    	positions.add(pos);
+    	this.positions = positions;
     }
     /**
      *  PostingsEntries are compared by their score (only relevant 
@@ -50,19 +52,10 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
     public String toString() {
     	return "[id="+docID+", score="+score+"]";
     }
-    public void addPos(int pos) {
-    	positions.add(pos);
-    }
-    public int getLastPos() {
-    	return positions.getLast();
-    }
-    public ListIterator<Integer> getPosIterator() {
-    	return positions.listIterator();
-    }
     public int getTermFrequency() {
-    	return positions.size();
+    	return positions.length;
     }
-    public LinkedList<Integer> getPositions() {
+    public int[] getPositions() {
     	return positions;
     }
 }
@@ -8,128 +8,280 @@
 
 package ir;
 
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  *   A list of postings for a given word.
+ *
+ *   The postings are kept in growable primitive arrays. Posting i has
+ *   docID docIDs[i] and its positions are stored in
+ *   positions[posStart[i]] .. positions[posStart[i+1]-1].
  */
 public class PostingsList implements Serializable {
-    
-    /** The postings list as a linked list. */
-    private LinkedList<PostingsEntry> list = new LinkedList<PostingsEntry>();
 
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** The docIDs of the postings, in increasing order. */
+    private int[] docIDs = new int[INITIAL_CAPACITY];
+
+    /** Offsets into positions, one more than the number of postings. */
+    private int[] posStart = new int[INITIAL_CAPACITY+1];
+
+    /** The positions of all postings, concatenated. */
+    private int[] positions = new int[INITIAL_CAPACITY];
+
+    /** The scores of the postings, only allocated in ranked result lists. */
+    private double[] scores;
+
+    /** Number of postings in this list. */
+    private int size = 0;
+
+    /**
+     *  The largest tf / document length of any posting, set when
+     *  documents are finished. Used as an upper bound on the score
+     *  a single posting can contribute in ranked retrieval.
+     */
+    private double maxWeight = 0;
+
+
+    public PostingsList() {
+    }
+
+    /**
+     *  Decodes a PostingsList of df postings written by encode().
+     */
+    public static PostingsList decode( byte[] in, int pos, int df, PostingsCodec codec ) {
+    	PostingsList pl = new PostingsList();
+    	pl.docIDs = new int[Math.max(df, 1)];
+    	pl.posStart = new int[df+1];
+    	pos = codec.decode(in, pos, pl.docIDs, 0, df);
+    	pos = codec.decode(in, pos, pl.posStart, 1, df);
+    	pl.positions = new int[Math.max(pl.posStart[df], 1)];
+    	for (int i = 0; i < df; i++) {
+    		pos = codec.decode(in, pos, pl.positions, pl.posStart[i], pl.posStart[i+1] - pl.posStart[i]);
+    	}
+    	pl.size = df;
+    	return pl;
+    }
+
+    /**
+     *  Compresses the docIDs and positions with @code{codec}: first the
+     *  docIDs, then the position offsets, then the positions of each
+     *  posting. Scores and the max weight are not kept.
+     */
+    public byte[] encode( PostingsCodec codec ) {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	codec.encode(docIDs, 0, size, out);
+    	codec.encode(posStart, 1, size, out);
+    	for (int i = 0; i < size; i++) {
+    		codec.encode(positions, posStart[i], posStart[i+1] - posStart[i], out);
+    	}
+    	return out.toByteArray();
+    }
 
     /**  Number of postings in this list  */
     public int size() {
-    	return list.size();
+    	return size;
     }
 
     /**  Returns the ith posting */
     public PostingsEntry get( int i ) {
-    	return list.get( i );
+    	PostingsEntry pe = new PostingsEntry(docIDs[i], Arrays.copyOfRange(positions, posStart[i], posStart[i+1]));
+    	pe.score = getScore(i);
+    	return pe;
     }
-    public PostingsEntry getLastEntry() {
-    	if (list.isEmpty())
-    		return null;
-		else return list.getLast();
+    public int getDocID(int i) {
+    	return docIDs[i];
     }
-    public boolean isEmpty() {
-    	return list.isEmpty();
+    public double getScore(int i) {
+    	return scores == null ? 0 : scores[i];
+    }
+    public void setScore(int i, double score) {
+    	ensureScores();
+    	scores[i] = score;
+    }
+    public int getTermFrequency(int i) {
+    	return posStart[i+1] - posStart[i];
     }
-    public Iterator<PostingsEntry> getIterator() {
-    	return list.iterator();
+    public double getMaxWeight() {
+    	return maxWeight;
     }
-    public void add(PostingsEntry pe) {
-    	if (list.isEmpty() || list.getLast().docID != pe.docID) {
-    		list.addLast(pe);
+    /** Raises the upper bound on tf / document length to at least weight */
+    public void updateMaxWeight(double weight) {
+    	if (weight > maxWeight) {
+    		maxWeight = weight;
     	}
-    	else if (list.getLast().docID == pe.docID) {
-    		list.getLast().addPos(pe.getLastPos());
+    }
+    public boolean isEmpty() {
+    	return size == 0;
+    }
+    public Cursor getCursor() {
+    	return new Cursor();
+    }
+    /** Put a new posting without positions to the PostingsList */
+    public void add(int docID) {
+    	if (size == 0 || docIDs[size-1] != docID) {
+    		if (size == docIDs.length) {
+    			grow();
+    		}
+    		docIDs[size] = docID;
+    		posStart[size+1] = posStart[size];
+    		size++;
     	}
     }
-    /** Put a new  PostingsEntry to PostingsList, score set to 0  */
+    /** Put a new position to the PostingsList, score set to 0 */
     public void add(int docID, int pos) {
-    	if (list.isEmpty() || list.getLast().docID != docID) {
-    		list.addLast(new PostingsEntry(docID, pos));
+    	add(docID);
+    	int end = posStart[size];
+    	if (end == positions.length) {
+    		positions = Arrays.copyOf(positions, end * 2);
+    	}
+    	positions[end] = pos;
+    	posStart[size] = end + 1;
+    }
+    /** Put a new scored posting without positions to the PostingsList */
+    public void add(int docID, double score) {
+    	add(docID);
+    	setScore(size-1, score);
+    }
+    /**
+     * Removes the posting for docID, if there is one.
+     */
+    public void remove(int docID) {
+    	int i = Arrays.binarySearch(docIDs, 0, size, docID);
+    	if (i < 0) {
+    		return;
+    	}
+    	int from = posStart[i], to = posStart[i+1];
+    	System.arraycopy(positions, to, positions, from, posStart[size] - to);
+    	System.arraycopy(docIDs, i+1, docIDs, i, size - i - 1);
+    	if (scores != null) {
+    		System.arraycopy(scores, i+1, scores, i, size - i - 1);
+    	}
+    	for (int j = i + 1; j <= size; j++) {
+    		posStart[j-1] = posStart[j] - (to - from);
     	}
-    	else if (list.getLast().docID == docID) {
-    		list.getLast().addPos(pos);
+    	size--;
+    }
+    private void grow() {
+    	int capacity = docIDs.length * 2;
+    	docIDs = Arrays.copyOf(docIDs, capacity);
+    	posStart = Arrays.copyOf(posStart, capacity+1);
+    	if (scores != null) {
+    		scores = Arrays.copyOf(scores, capacity);
+    	}
+    }
+    private void ensureScores() {
+    	if (scores == null) {
+    		scores = new double[docIDs.length];
     	}
     }
     /**
-     * Unions this postingslist with another postingslist
-     * 
-     * Assumes that the lists are sorted by docID
-     * 
-     * @param other
+     * Sorts the postings by descending score, ties in docID order.
+     * Positions are not kept.
      */
-    public void unionWith(PostingsList other) {
-    	
-    	ListIterator<PostingsEntry> it1 = list.listIterator();
-    	Iterator<PostingsEntry> it2 = other.getIterator();
-    	
-    	LinkedList<PostingsEntry> merged = new LinkedList<PostingsEntry>();
-    	
-    	// If both are non-empty, step through them and merge by docID-order
-    	if (it1.hasNext() && it2.hasNext()) {
-    		PostingsEntry pe1 = it1.next();
-    		PostingsEntry pe2 = it2.next();
-    		
-    		while (true) {
-    			
-    			// If same document, add score to the existing score
-    			if (pe1.docID == pe2.docID) {
-    				pe1.score += pe2.score;
-    				merged.addLast(pe1);
-    				
-    				if (!it1.hasNext() || !it2.hasNext())
-    					break;
-    				else {
-    					pe1 = it1.next();
-    					pe2 = it2.next();
-    				}
-    			}
-    			// If not the same document, add a new postingsentry for the document
-    			else if (pe1.docID > pe2.docID) {
-    				merged.addLast(pe2);
-    				if (it2.hasNext())
-    					pe2 = it2.next();
-    				else break;
-    			}
-    			else if (pe1.docID < pe2.docID) {
-    				merged.addLast(pe1);
-    				if (it1.hasNext())
-    					pe1 = it1.next();
-    				else break;
+    public void sort() {
+    	ensureScores();
+    	sort(0, size-1);
+    	Arrays.fill(posStart, 0, size+1, 0);
+    }
+    private void sort(int lo, int hi) {
+    	while (lo < hi) {
+    		int p = lo + (hi - lo) / 2;
+    		double pScore = scores[p];
+    		int pDoc = docIDs[p];
+    		int i = lo, j = hi;
+    		while (i <= j) {
+    			while (before(i, pScore, pDoc)) i++;
+    			while (after(j, pScore, pDoc)) j--;
+    			if (i <= j) {
+    				swap(i++, j--);
     			}
     		}
-    	}
-    	if (it1.hasNext() && !it2.hasNext()) {
-    		while (it1.hasNext()) {
-    			merged.addLast(it1.next());
+    		// Recurse into the smaller half to bound the stack depth
+    		if (j - lo < hi - i) {
+    			sort(lo, j);
+    			lo = i;
     		}
-    	}
-    	if (!it1.hasNext() && it2.hasNext()) {
-    		while (it2.hasNext()) {
-    			merged.addLast(it2.next());
+    		else {
+    			sort(i, hi);
+    			hi = j;
     		}
     	}
-    	list = merged;
     }
-    public void sort() {
-    	Collections.sort(list);
+    private boolean before(int i, double score, int docID) {
+    	return scores[i] > score || (scores[i] == score && docIDs[i] < docID);
+    }
+    private boolean after(int i, double score, int docID) {
+    	return scores[i] < score || (scores[i] == score && docIDs[i] > docID);
+    }
+    private void swap(int i, int j) {
+    	int d = docIDs[i]; docIDs[i] = docIDs[j]; docIDs[j] = d;
+    	double s = scores[i]; scores[i] = scores[j]; scores[j] = s;
     }
     public String toString() {
-    	String rString = "";
-    	for (PostingsEntry pe : list ) 
-    		rString += (pe.toString()+" ");
-    	return rString;
+    	StringBuilder rString = new StringBuilder();
+    	for (int i = 0; i < size; i++)
+    		rString.append("[id="+docIDs[i]+", score="+getScore(i)+"] ");
+    	return rString.toString();
+    }
+
+    /**
+     *   Steps through the postings without creating any PostingsEntry
+     *   objects. A new cursor is positioned before the first posting.
+     */
+    public final class Cursor {
+
+    	/** Index of the current posting. */
+    	private int i = -1;
+
+    	/** Moves to the next posting, returns false if there is none. */
+    	public boolean next() {
+    		return ++i < size;
+    	}
+    	/**
+    	 * Moves to the first posting with docID at least target, or
+    	 * stays if the current posting already is. Returns false if
+    	 * there is no such posting.
+    	 *
+    	 * Gallops ahead in steps of 1, 2, 4, ... postings and then
+    	 * binary searches the last step, so skipping d postings costs
+    	 * O(log d) instead of O(d).
+    	 */
+    	public boolean advance(int target) {
+    		if (i < 0) {
+    			i = 0;
+    		}
+    		if (i >= size || docIDs[i] >= target) {
+    			return i < size;
+    		}
+    		// docIDs[lo] < target, and docIDs[hi] >= target unless hi is past the end
+    		int lo = i, step = 1;
+    		int hi = lo + step;
+    		while (hi < size && docIDs[hi] < target) {
+    			lo = hi;
+    			step <<= 1;
+    			hi = lo + step;
+    		}
+    		hi = Math.min(hi, size);
+    		int r = Arrays.binarySearch(docIDs, lo + 1, hi, target);
+    		i = r >= 0 ? r : -r - 1;
+    		return i < size;
+    	}
+    	public int getDocID() {
+    		return docIDs[i];
+    	}
+    	public int getTermFrequency() {
+    		return posStart[i+1] - posStart[i];
+    	}
+    	/** Returns the jth position of the current posting. */
+    	public int getPosition(int j) {
+    		return positions[posStart[i]+j];
+    	}
     }
 }
-	
 
-			   
+
+
@@ -76,21 +76,10 @@ public class Query {
     		return;
     	}
     	
-    	HashMap<Integer, HashMap<String, Double>> tfidfs = new HashMap<Integer, HashMap<String, Double>>();
-    	int N = indexer.index.docIDs.size();
-    	
-    	for (Integer docID : relevantDocs) {
-    		HashMap<String, Double> docVector = new HashMap<String, Double>();
-    		HashMap<String, Integer> doc = indexer.index.getDocument(docID);
-    		for (String word : doc.keySet()) {
-    			int tf = doc.get(word);
-    			queryLength += tf;
-    			double idf = Math.log(N / (double) indexer.index.getPostings(word).size());
-    			double tfidf = tf * idf / indexer.index.docLengths.get(docID+"");
-    			docVector.put(word, tfidf);
-    		}
-    		tfidfs.put(docID, docVector);
-    	}
+    	// One snapshot throughout, so that the termIDs and statistics agree
+    	Index index = indexer.index.getSnapshot();
+    	ForwardIndex forward = index.getForwardIndex();
+    	RankingStatistics stats = index.getStatistics();
     	
     	/** Do Rocchio **/
     	
@@ -98,18 +87,44 @@ public class Query {
     	for (String term : terms) {
     		weights.put(term, weights.get(term) * ALPHA);
     	}
-    	// Multiply new term-weights with beta and divide by number of relevant docs
+    	// Add the tf-idf vectors of the relevant docs, times beta divided by their number
     	for (Integer docID : relevantDocs) {
-    		HashMap<String, Double> docVector = tfidfs.get(docID);
-    		for (String word : docVector.keySet()) {
-    			if (!weights.containsKey(word)) {
-    				terms.add(word);
-    				weights.put(word, BETA*docVector.get(word)/relevantDocs.size());
+    		double docLength = stats.getLength(docID);
+    		if (forward != null && forward.contains(docID)) {
+    			for (int i = 0; i < forward.size(docID); i++) {
+    				int termID = forward.getTermID(docID, i);
+    				addFeedback(index.getTerm(termID), forward.getTermFrequency(docID, i),
+    						stats.getIdf(termID), docLength, relevantDocs.size());
+    			}
+    		}
+    		else if (forward == null) {
+    			// A SegmentedIndex keeps the document vectors in its segments
+    			HashMap<String, Integer> words = index.getDocument(docID);
+    			if (words == null) {
+    				continue;
     			}
-    			else {
-    				weights.put(word, weights.get(word) + BETA*(docVector.get(word))/relevantDocs.size());
+    			for (String word : words.keySet()) {
+    				addFeedback(word, words.get(word), stats.getIdf(index.getTermID(word)),
+    						docLength, relevantDocs.size());
     			}
     		}
     	}
     }
+
+    /**
+     *  Adds a term of a relevant document to the query, with its
+     *  tf-idf weight times BETA divided by the number of relevant documents.
+     */
+    private void addFeedback(String word, int tf, double idf, double docLength, int relevant) {
+    	queryLength += tf;
+    	double tfidf = tf * idf / docLength;
+    	Double weight = weights.get(word);
+    	if (weight == null) {
+    		terms.add(word);
+    		weights.put(word, BETA*tfidf/relevant);
+    	}
+    	else {
+    		weights.put(word, weight + BETA*tfidf/relevant);
+    	}
+    }
 }
\ No newline at end of file
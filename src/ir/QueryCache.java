@@ -0,0 +1,137 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ *   Remembers the results of recent searches.
+ *
+ *   A result is found again by the generation of the snapshot it was
+ *   computed on, the query terms with their weights, and the query,
+ *   ranking and structure types. Since the generation changes whenever
+ *   new documents or deletions are published, a cached result is
+ *   never older than the snapshot being searched.
+ *
+ *   The cache holds at most MAX_QUERIES results with MAX_POSTINGS
+ *   entries between them, and drops the least recently used result
+ *   first. The results are shared between all who find them, so they
+ *   must not be changed.
+ */
+public class QueryCache {
+
+    /** Number of results kept by a new cache. 0 turns caching off. */
+    public static int MAX_QUERIES = 1000;
+
+    /** Number of postings entries kept by a new cache, over all results. */
+    public static int MAX_POSTINGS = 1000000;
+
+    private final int maxQueries;
+    private final int maxPostings;
+
+    /** The results, least recently used first. */
+    private final LinkedHashMap<String,PostingsList> results = new LinkedHashMap<String,PostingsList>( 16, 0.75f, true );
+
+    /** Number of postings entries in results. */
+    private int postings = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+
+    public QueryCache() {
+    	this( MAX_QUERIES, MAX_POSTINGS );
+    }
+
+    public QueryCache( int maxQueries, int maxPostings ) {
+    	this.maxQueries = maxQueries;
+    	this.maxPostings = maxPostings;
+    }
+
+    /**
+     *  The key of a search on the snapshot of @code{generation}.
+     */
+    public static String key( long generation, Query query, int queryType, int rankingType, int structureType, int k ) {
+    	StringBuilder key = new StringBuilder();
+    	key.append( generation ).append( ' ' ).append( queryType ).append( ' ' ).append( rankingType );
+    	key.append( ' ' ).append( structureType ).append( ' ' ).append( k );
+    	for ( String term : query.terms ) {
+    		key.append( ' ' ).append( term ).append( '\u0000' ).append( query.weights.get( term ));
+    	}
+    	return key.toString();
+    }
+
+    /**
+     *  Returns the result cached under @code{key}, or null.
+     */
+    public synchronized PostingsList get( String key ) {
+    	PostingsList result = results.get( key );
+    	if ( result == null ) {
+    		misses++;
+    	}
+    	else {
+    		hits++;
+    	}
+    	return result;
+    }
+
+    /**
+     *  Caches @code{result} under @code{key}, unless it is too large
+     *  for the cache.
+     */
+    public synchronized void put( String key, PostingsList result ) {
+    	if ( maxQueries <= 0 || result.size() > maxPostings / 2 ) {
+    		return;
+    	}
+    	PostingsList old = results.put( key, result );
+    	if ( old != null ) {
+    		postings -= old.size();
+    	}
+    	postings += result.size();
+    	Iterator<Map.Entry<String,PostingsList>> it = results.entrySet().iterator();
+    	while ( results.size() > maxQueries || postings > maxPostings ) {
+    		postings -= it.next().getValue().size();
+    		it.remove();
+    		evictions++;
+    	}
+    }
+
+    /**
+     *  Drops all cached results. The counters are kept.
+     */
+    public synchronized void clear() {
+    	results.clear();
+    	postings = 0;
+    }
+
+    /**  Number of cached results  */
+    public synchronized int size() {
+    	return results.size();
+    }
+
+    /**  Number of lookups that found a result  */
+    public synchronized long getHits() {
+    	return hits;
+    }
+
+    /**  Number of lookups that found nothing  */
+    public synchronized long getMisses() {
+    	return misses;
+    }
+
+    /**  Number of results dropped to make room for others  */
+    public synchronized long getEvictions() {
+    	return evictions;
+    }
+
+    public synchronized String toString() {
+    	return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " size=" + results.size();
+    }
+}
@@ -0,0 +1,132 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *   The collection statistics that ranking needs, in float[] tables:
+ *   the length and Euclidean norm of each document, indexed by docID,
+ *   and the idf of each term, indexed by termID.
+ *
+ *   The document tables are updated as documents are added and
+ *   removed. The idf of a term depends on N, so adding or removing a
+ *   document only moves the statistics to a new version, and the idf
+ *   of a term is recomputed from its df when it is next asked for in
+ *   a later version. A query only pays for its own terms.
+ */
+public class RankingStatistics {
+
+    /** Number of tokens in each document, 0 for unknown docIDs. */
+    private float[] lengths = new float[64];
+
+    /** Euclidean length of each document's tf vector. */
+    private float[] norms = new float[64];
+
+    /** Which docIDs are documents of the collection. */
+    private boolean[] present = new boolean[64];
+
+    /** Number of documents, N in the idf. */
+    private int documents = 0;
+
+    /** The index that the document frequencies come from. */
+    private final Index index;
+
+    /** log(N/df) of each termID, as of the version in @code{computed}. */
+    private float[] idf = new float[0];
+
+    /** The version each idf was computed in, 0 for never. */
+    private int[] computed = new int[0];
+
+    /** Changes every time a document is added or removed. */
+    private int version = 1;
+
+
+    /**
+     *  Creates empty statistics, with idf computed from the document
+     *  frequencies in @code{index}.
+     */
+    public RankingStatistics( Index index ) {
+    	this.index = index;
+    }
+
+    /**
+     *  Adds a document, or replaces the statistics of one.
+     */
+    public synchronized void addDocument( int docID, int length, double euclNorm ) {
+    	if ( docID >= lengths.length ) {
+    		int capacity = Math.max( docID + 1, lengths.length * 2 );
+    		lengths = Arrays.copyOf( lengths, capacity );
+    		norms = Arrays.copyOf( norms, capacity );
+    		present = Arrays.copyOf( present, capacity );
+    	}
+    	if ( !present[docID] ) {
+    		present[docID] = true;
+    		documents++;
+    	}
+    	lengths[docID] = length;
+    	norms[docID] = (float)euclNorm;
+    	version++;
+    }
+
+    /**
+     *  Removes a document, if it is there.
+     */
+    public synchronized void removeDocument( int docID ) {
+    	if ( docID < present.length && present[docID] ) {
+    		present[docID] = false;
+    		lengths[docID] = 0;
+    		norms[docID] = 0;
+    		documents--;
+    		version++;
+    	}
+    }
+
+    /**  Number of documents  */
+    public int getDocumentCount() {
+    	return documents;
+    }
+
+    /**  Number of tokens in a document  */
+    public float getLength( int docID ) {
+    	return docID < lengths.length ? lengths[docID] : 0;
+    }
+
+    /**  Euclidean length of a document's tf vector  */
+    public float getEuclideanNorm( int docID ) {
+    	return docID < norms.length ? norms[docID] : 0;
+    }
+
+    /**
+     *  Returns log(N/df) of a termID, computing it if documents have
+     *  been added or removed since it was last asked for.
+     */
+    public synchronized float getIdf( int termID ) {
+    	if ( termID < 0 ) {
+    		return 0;
+    	}
+    	if ( termID >= idf.length ) {
+    		int capacity = Math.max( termID + 1, idf.length * 2 );
+    		idf = Arrays.copyOf( idf, capacity );
+    		computed = Arrays.copyOf( computed, capacity );
+    	}
+    	if ( computed[termID] != version ) {
+    		int df = index.getDocumentFrequency( termID );
+    		idf[termID] = df > 0 ? (float)Math.log( documents / (double)df ) : 0;
+    		computed[termID] = version;
+    	}
+    	return idf[termID];
+    }
+
+    /**
+     *  Forgets every idf, for changes to postings that do not add or
+     *  remove a document.
+     */
+    public synchronized void invalidate() {
+    	version++;
+    }
+}
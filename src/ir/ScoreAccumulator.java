@@ -0,0 +1,86 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ *   Accumulates the scores of one ranked query, term at a time.
+ *
+ *   Scores are kept in an array indexed by docID, so that the shared
+ *   postings lists are only read during search. A new accumulator
+ *   is created for every query.
+ */
+public class ScoreAccumulator {
+
+    /** The accumulated score of each document. */
+    private double[] scores;
+
+    /** Whether a document has been scored by any query term. */
+    private boolean[] seen;
+
+    /** The docIDs that have been scored, in the order they were seen. */
+    private int[] docs = new int[16];
+
+    /** Number of scored documents. */
+    private int size = 0;
+
+
+    /**
+     *  Creates an accumulator for docIDs up to (not including) @code{capacity}.
+     *  The accumulator grows if larger docIDs are added.
+     */
+    public ScoreAccumulator( int capacity ) {
+    	scores = new double[Math.max(capacity, 16)];
+    	seen = new boolean[scores.length];
+    }
+
+    /**
+     *  Adds @code{score} to the accumulated score of @code{docID}.
+     */
+    public void add( int docID, double score ) {
+    	if (docID >= scores.length) {
+    		int capacity = Math.max(docID + 1, scores.length * 2);
+    		scores = Arrays.copyOf(scores, capacity);
+    		seen = Arrays.copyOf(seen, capacity);
+    	}
+    	if (!seen[docID]) {
+    		seen[docID] = true;
+    		if (size == docs.length) {
+    			docs = Arrays.copyOf(docs, size * 2);
+    		}
+    		docs[size++] = docID;
+    	}
+    	scores[docID] += score;
+    }
+
+    /**  Number of scored documents  */
+    public int size() {
+    	return size;
+    }
+
+    /**  Returns the ith scored docID, in the order they were first scored  */
+    public int getDocID( int i ) {
+    	return docs[i];
+    }
+
+    /**  Returns the accumulated score of a document  */
+    public double getScore( int docID ) {
+    	return docID < scores.length ? scores[docID] : 0;
+    }
+
+    /**
+     *  Returns the scored documents as a new PostingsList in docID order.
+     */
+    public PostingsList toPostingsList() {
+    	Arrays.sort(docs, 0, size);
+    	PostingsList result = new PostingsList();
+    	for (int i = 0; i < size; i++) {
+    		result.add(docs[i], scores[docs[i]]);
+    	}
+    	return result;
+    }
+}
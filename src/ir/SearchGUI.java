@@ -38,6 +38,9 @@ public class SearchGUI extends JFrame {
     /**  Directories that should be indexed. */
     LinkedList<String> dirNames = new LinkedList<String>();
 
+    /**  Whether a saved index should be updated with changed files at start-up. */
+    boolean updateIndex = false;
+
     /**  The query type (either intersection, phrase, or ranked). */
     int queryType = Index.INTERSECTION_QUERY;
 
@@ -50,12 +53,18 @@ public class SearchGUI extends JFrame {
     /**  The word structure type (either unigram, bigram, or subphrase). */
     int structureType = Index.UNIGRAM;
 		
-    /**  Lock to prevent simultaneous access to the index. */
+    /**  Lock to prevent simultaneous changes to the index. Searches do not take it. */
     Object indexLock = new Object();
 
-    /**  Directory from which the code is compiled and run. */
-    public static final String homeDir = "C:/Users/David/workspace/ir_lab1_1";
+    /**  Directory from which the code is compiled and run, given by the property ir.home. */
+    public static final String homeDir = System.getProperty( "ir.home", "." );
     public static boolean PRINT_TIMES = false;
+
+    /**  Directory where the index is saved, and opened from at start-up. */
+    public static String INDEX_DIR = "index";
+
+    /**  The number of documents shown for a ranked query. */
+    public static final int MAX_RESULTS = 100;
 	
 
     /*
@@ -171,18 +180,15 @@ public class SearchGUI extends JFrame {
 		    // Normalize the search string and turn it into a Query
 		    String queryString = SimpleTokenizer.normalize( queryWindow.getText() );
 		    query = new Query( queryString );
-		    // Search and print results. Access to the index is synchronized since
-		    // we don't want to search at the same time we're indexing new files
-		    // (this might corrupt the index).
-		    synchronized ( indexLock ) {
-		    	results = indexer.index.search( query, queryType, rankingType, structureType ); 
-		    }
+		    // Search and print results. The search runs on the last snapshot
+		    // the index published, so it does not wait for indexing to finish.
+		    results = indexer.index.search( query, queryType, rankingType, structureType, MAX_RESULTS ); 
 		    StringBuffer buf = new StringBuffer();
 		    if ( results != null ) {
 				buf.append( "\nFound " + results.size() + " matching document(s)\n\n" );
 				for ( int i=0; i<results.size(); i++ ) {
 				    buf.append( " " + i + ". " );
-				    String filename = indexer.index.docIDs.get( "" + results.get(i).docID );
+				    String filename = indexer.index.getDocuments().getPath( results.get(i).docID );
 				    if ( filename == null ) {
 				    	buf.append( "" + results.get(i).docID );
 				    }
@@ -220,17 +226,14 @@ public class SearchGUI extends JFrame {
 				// Expand the current search query with the documents marked as relevant 
 				query.relevanceFeedback( results, docIsRelevant, indexer );
 				
-				// Perform a new search with the weighted and expanded query. Access to the index is 
-				// synchronized since we don't want to search at the same time we're indexing new files
-				// (this might corrupt the index).
-				synchronized ( indexLock ) {
-				    results = indexer.index.search( query, queryType, rankingType, structureType );
-				}
+				// Perform a new search with the weighted and expanded query, on the
+				// last snapshot the index published
+				results = indexer.index.search( query, queryType, rankingType, structureType, MAX_RESULTS );
 				buf.append( "\nSearch after relevance feedback:\n" );
 				buf.append( "\nFound " + results.size() + " matching document(s)\n\n" );
 				for ( int i=0; i<results.size(); i++ ) {
 				    buf.append( " " + i + ". " );
-				    String filename = indexer.index.docIDs.get( "" + results.get(i).docID );
+				    String filename = indexer.index.getDocuments().getPath( results.get(i).docID );
 				    if ( filename == null ) {
 				    	buf.append( "" + results.get(i).docID );
 				    }
@@ -252,7 +255,16 @@ public class SearchGUI extends JFrame {
 	Action saveAndQuit = new AbstractAction() {
 		public void actionPerformed( ActionEvent e ) {
 		    resultWindow.setText( "\n  Saving index..." );
-		    indexer.index.cleanup();
+		    // Saving publishes the index, which must not happen in the middle of indexing
+		    synchronized ( indexLock ) {
+		    	indexer.index.cleanup();
+		    	try {
+		    		indexer.saveCatalog( new File( INDEX_DIR ));
+		    	}
+		    	catch ( IOException ex ) {
+		    		ex.printStackTrace();
+		    	}
+		    }
 		    System.exit( 0 );
 		}
     };
@@ -331,9 +343,8 @@ public class SearchGUI extends JFrame {
 
     /**
      *   Calls the indexer to index the chosen directory structure.
-     *   Access to the index is synchronized since we don't want to 
-     *   search at the same time we're indexing new files (this might 
-     *   corrupt the index).
+     *   Only one thread at a time may change the index, searches go on
+     *   meanwhile and see the documents as they are published.
      */
     private void index() {
 		synchronized ( indexLock ) {
@@ -363,6 +374,33 @@ public class SearchGUI extends JFrame {
 				    dirNames.add( args[i++] );
 				}
 		    }
+		    else if ( "-w".equals( args[i] )) {
+		    	i++;
+				if ( i < args.length ) {
+				    indexer.setWorkers( Integer.parseInt( args[i++] ));
+				}
+		    }
+		    else if ( "-s".equals( args[i] )) {
+		    	i++;
+				if ( i < args.length ) {
+				    SegmentedIndex.SHARDS = Integer.parseInt( args[i++] );
+				    indexer.index = new SegmentedIndex();
+				}
+		    }
+		    else if ( "-c".equals( args[i] )) {
+		    	i++;
+				if ( i < args.length ) {
+				    indexer.textCache = new TextCache( new File( args[i++] ));
+				}
+		    }
+		    else if ( "-u".equals( args[i] )) {
+		    	i++;
+		    	updateIndex = true;
+		    }
+		    else if ( "-b".equals( args[i] )) {
+		    	i++;
+		    	HashedIndex.CREATE_BIWORDS = true;
+		    }
 		    else {
 		    	System.err.println( "Unknown option: " + args[i] );
 		    	break;
@@ -384,6 +422,18 @@ public class SearchGUI extends JFrame {
 		
 		//s.decodeArgs( args );
 		
+		if ( DiskIndex.exists( new File( INDEX_DIR ))) {
+		    try {
+		    	s.indexer.open( new File( INDEX_DIR ), s.updateIndex );
+		    	s.resultWindow.setText( "\n  Opened saved index" );
+		    	if ( !s.updateIndex ) {
+		    		return;
+		    	}
+		    }
+		    catch ( IOException e ) {
+		    	e.printStackTrace();
+		    }
+		}
 		s.index();
     }
 }
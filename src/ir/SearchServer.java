@@ -0,0 +1,386 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ *   A search server without a GUI, answering queries over HTTP.
+ *
+ *   GET /search?q=... searches for one query, and POST /search searches
+ *   for every line of the request body at once. Both take the options
+ *
+ *     type       intersection, phrase or ranked (default intersection)
+ *     ranking    tfidf, pagerank or combination (default tfidf)
+ *     structure  unigram, bigram or subphrase (default unigram)
+ *     k          number of results listed (default MAX_RESULTS, at most MAX_K)
+ *     timeout    in milliseconds (default SearchService.DEFAULT_TIMEOUT)
+ *
+ *   and answer in JSON. Only the first k results are listed, but for
+ *   intersection and phrase queries "found" is the number of all
+ *   matching documents. A search that times out gets status 504, or
+ *   "timeout": true in a batch. GET /status tells the number of
+ *   documents in the index, the counters of its QueryCache, and the
+ *   files the indexer quarantined, with the reasons.
+ *
+ *   The requests are handled on threads of their own, one virtual
+ *   thread per request on Java 21 and later, and wait there for their
+ *   searches on the threads of the SearchService. A search that the
+ *   service has no room for gets status 503.
+ */
+public class SearchServer {
+
+    /** The port the server listens on, unless told otherwise. */
+    public static int DEFAULT_PORT = 8080;
+
+    /** The largest k a client gets, whatever it asks for. */
+    public static int MAX_K = 10000;
+
+    private final SearchService service;
+
+    private final HttpServer server;
+
+    /** The threads the requests are handled on. */
+    private final ExecutorService handlers;
+
+
+    /**
+     *  Creates a server for @code{service} on @code{port}. It does not
+     *  answer until start() is called.
+     */
+    public SearchServer( SearchService service, int port ) throws IOException {
+    	this.service = service;
+    	server = HttpServer.create( new InetSocketAddress( port ), 0 );
+    	ExecutorService executor = SearchService.newVirtualThreadExecutor();
+    	if ( executor == null ) {
+    		// Enough threads to wait for every search the service accepts
+    		executor = Executors.newFixedThreadPool( SearchService.THREADS + SearchService.QUEUE_SIZE,
+    							 SearchService.daemonThreads( "search-request" ));
+    	}
+    	handlers = executor;
+    	server.setExecutor( handlers );
+    	server.createContext( "/search", new HttpHandler() {
+    		public void handle( HttpExchange exchange ) throws IOException {
+    			search( exchange );
+    		}
+    	});
+    	server.createContext( "/status", new HttpHandler() {
+    		public void handle( HttpExchange exchange ) throws IOException {
+    			status( exchange );
+    		}
+    	});
+    }
+
+    public void start() {
+    	server.start();
+    }
+
+    /**
+     *  Stops answering, waiting at most @code{delay} seconds for the
+     *  requests being handled.
+     */
+    public void stop( int delay ) {
+    	server.stop( delay );
+    	handlers.shutdown();
+    }
+
+    /**  The port the server listens on  */
+    public int getPort() {
+    	return server.getAddress().getPort();
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    private void search( HttpExchange exchange ) throws IOException {
+    	try {
+    		HashMap<String,String> params = decodeParams( exchange.getRequestURI().getRawQuery() );
+    		int queryType = option( params, "type", new String[] { "intersection", "phrase", "ranked" } );
+    		int rankingType = option( params, "ranking", new String[] { "tfidf", "pagerank", "combination" } );
+    		int structureType = option( params, "structure", new String[] { "unigram", "bigram", "subphrase" } );
+    		int k = params.containsKey( "k" ) ? Integer.parseInt( params.get( "k" )) : SearchService.DEFAULT_RESULTS;
+    		if ( k < 1 ) {
+    			throw new IllegalArgumentException( "k must be at least 1" );
+    		}
+    		k = Math.min( k, MAX_K );
+    		long timeout = params.containsKey( "timeout" ) ? Long.parseLong( params.get( "timeout" )) : SearchService.DEFAULT_TIMEOUT;
+    		if ( "POST".equals( exchange.getRequestMethod() )) {
+    			List<String> queries = readLines( exchange );
+    			List<PostingsList> results = service.searchAll( queries, queryType, rankingType, structureType, k, timeout );
+    			StringBuilder json = new StringBuilder( "[" );
+    			for ( int i=0; i<queries.size(); i++ ) {
+    				json.append( i == 0 ? "\n" : ",\n" );
+    				appendResult( json, queries.get( i ), results.get( i ), queryType, k );
+    			}
+    			respond( exchange, 200, json.append( "\n]\n" ).toString() );
+    		}
+    		else if ( "GET".equals( exchange.getRequestMethod() )) {
+    			String q = params.get( "q" );
+    			if ( q == null ) {
+    				respond( exchange, 400, error( "missing parameter q" ));
+    				return;
+    			}
+    			try {
+    				PostingsList result = service.search( q, queryType, rankingType, structureType, k, timeout );
+    				StringBuilder json = new StringBuilder();
+    				appendResult( json, q, result, queryType, k );
+    				respond( exchange, 200, json.append( "\n" ).toString() );
+    			}
+    			catch ( TimeoutException e ) {
+    				StringBuilder json = new StringBuilder();
+    				appendResult( json, q, null, queryType, k );
+    				respond( exchange, 504, json.append( "\n" ).toString() );
+    			}
+    		}
+    		else {
+    			respond( exchange, 405, error( "use GET or POST" ));
+    		}
+    	}
+    	catch ( IllegalArgumentException e ) {
+    		respond( exchange, 400, error( e.getMessage() ));
+    	}
+    	catch ( RejectedExecutionException e ) {
+    		respond( exchange, 503, error( "too many searches" ));
+    	}
+    	catch ( InterruptedException e ) {
+    		Thread.currentThread().interrupt();
+    		respond( exchange, 503, error( "interrupted" ));
+    	}
+    	catch ( RuntimeException e ) {
+    		e.printStackTrace();
+    		respond( exchange, 500, error( String.valueOf( e )));
+    	}
+    }
+
+    private void status( HttpExchange exchange ) throws IOException {
+    	Index index = service.getIndex();
+    	StringBuilder json = new StringBuilder( "{\"documents\": " ).append( index.getDocuments().size() );
+    	if ( index instanceof SegmentedIndex ) {
+    		QueryCache cache = ((SegmentedIndex) index).getQueryCache();
+    		json.append( ", \"cache\": {\"size\": " ).append( cache.size() );
+    		json.append( ", \"hits\": " ).append( cache.getHits() );
+    		json.append( ", \"misses\": " ).append( cache.getMisses() );
+    		json.append( ", \"evictions\": " ).append( cache.getEvictions() ).append( "}" );
+    	}
+    	json.append( ", \"quarantined\": {" );
+    	String separator = "";
+    	for ( Map.Entry<String,String> e : service.getQuarantined().entrySet() ) {
+    		json.append( separator );
+    		appendString( json, e.getKey() );
+    		json.append( ": " );
+    		appendString( json, e.getValue() );
+    		separator = ", ";
+    	}
+    	json.append( "}" );
+    	respond( exchange, 200, json.append( "}\n" ).toString() );
+    }
+
+    /**
+     *  Appends the result of a search for @code{query} as a JSON
+     *  object, listing at most @code{k} documents. A null
+     *  @code{result} means that the search timed out.
+     */
+    private void appendResult( StringBuilder json, String query, PostingsList result, int queryType, int k ) {
+    	json.append( "{\"query\": " );
+    	appendString( json, query );
+    	if ( result == null ) {
+    		json.append( ", \"timeout\": true}" );
+    		return;
+    	}
+    	json.append( ", \"found\": " ).append( result.size() ).append( ", \"results\": [" );
+    	for ( int i=0; i<Math.min( k, result.size() ); i++ ) {
+    		PostingsEntry e = result.get( i );
+    		json.append( i == 0 ? "" : ", " ).append( "{\"docID\": " ).append( e.docID ).append( ", \"path\": " );
+    		appendString( json, service.getPath( e.docID ));
+    		if ( queryType == Index.RANKED_QUERY ) {
+    			json.append( ", \"score\": " ).append( e.score );
+    		}
+    		json.append( "}" );
+    	}
+    	json.append( "]}" );
+    }
+
+    private static void appendString( StringBuilder json, String s ) {
+    	if ( s == null ) {
+    		json.append( "null" );
+    		return;
+    	}
+    	json.append( '"' );
+    	for ( int i=0; i<s.length(); i++ ) {
+    		char c = s.charAt( i );
+    		if ( c == '"' || c == '\\' ) {
+    			json.append( '\\' ).append( c );
+    		}
+    		else if ( c < 0x20 ) {
+    			json.append( String.format( "\\u%04x", (int)c ));
+    		}
+    		else {
+    			json.append( c );
+    		}
+    	}
+    	json.append( '"' );
+    }
+
+    private static String error( String message ) {
+    	StringBuilder json = new StringBuilder( "{\"error\": " );
+    	appendString( json, message );
+    	return json.append( "}\n" ).toString();
+    }
+
+    private static void respond( HttpExchange exchange, int status, String body ) throws IOException {
+    	byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+    	exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+    	exchange.sendResponseHeaders( status, bytes.length );
+    	try ( OutputStream out = exchange.getResponseBody() ) {
+    		out.write( bytes );
+    	}
+    }
+
+    /**
+     *  The non-empty lines of the request body.
+     */
+    private static List<String> readLines( HttpExchange exchange ) throws IOException {
+    	ArrayList<String> lines = new ArrayList<String>();
+    	try ( BufferedReader in = new BufferedReader( new InputStreamReader( exchange.getRequestBody(), StandardCharsets.UTF_8 ))) {
+    		String line;
+    		while (( line = in.readLine() ) != null ) {
+    			if ( !line.trim().isEmpty() ) {
+    				lines.add( line );
+    			}
+    		}
+    	}
+    	return lines;
+    }
+
+    private static HashMap<String,String> decodeParams( String query ) throws UnsupportedEncodingException {
+    	HashMap<String,String> params = new HashMap<String,String>();
+    	if ( query == null ) {
+    		return params;
+    	}
+    	for ( String pair : query.split( "&" )) {
+    		int eq = pair.indexOf( '=' );
+    		String name = eq < 0 ? pair : pair.substring( 0, eq );
+    		String value = eq < 0 ? "" : pair.substring( eq + 1 );
+    		params.put( URLDecoder.decode( name, "UTF-8" ), URLDecoder.decode( value, "UTF-8" ));
+    	}
+    	return params;
+    }
+
+    /**
+     *  The position of the value of parameter @code{name} in
+     *  @code{values}, which are in the order of the Index constants.
+     */
+    private static int option( HashMap<String,String> params, String name, String[] values ) {
+    	String value = params.get( name );
+    	if ( value == null ) {
+    		return 0;
+    	}
+    	for ( int i=0; i<values.length; i++ ) {
+    		if ( values[i].equals( value )) {
+    			return i;
+    		}
+    	}
+    	throw new IllegalArgumentException( "unknown " + name + ": " + value );
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  Starts a server. The options are those of the SearchGUI, such
+     *  as -b to index biwords for the bigram and subphrase structures, and
+     *  -p for the port and -t for the default timeout in milliseconds.
+     *  A saved index in SearchGUI.INDEX_DIR is opened; the directories
+     *  given with -d are indexed if there is none or -u is given, while
+     *  the server already answers.
+     */
+    public static void main( String[] args ) throws IOException {
+    	Indexer indexer = new Indexer();
+    	LinkedList<String> dirNames = new LinkedList<String>();
+    	boolean updateIndex = false;
+    	int port = DEFAULT_PORT;
+    	int i = 0;
+    	while ( i < args.length ) {
+    		String option = args[i++];
+    		if ( "-u".equals( option )) {
+    			updateIndex = true;
+    			continue;
+    		}
+    		if ( "-b".equals( option )) {
+    			HashedIndex.CREATE_BIWORDS = true;
+    			continue;
+    		}
+    		if ( i >= args.length ) {
+    			System.err.println( "Missing value for option: " + option );
+    			break;
+    		}
+    		String value = args[i++];
+    		if ( "-d".equals( option )) {
+    			dirNames.add( value );
+    		}
+    		else if ( "-w".equals( option )) {
+    			indexer.setWorkers( Integer.parseInt( value ));
+    		}
+    		else if ( "-s".equals( option )) {
+    			SegmentedIndex.SHARDS = Integer.parseInt( value );
+    			indexer.index = new SegmentedIndex();
+    		}
+    		else if ( "-c".equals( option )) {
+    			indexer.textCache = new TextCache( new File( value ));
+    		}
+    		else if ( "-p".equals( option )) {
+    			port = Integer.parseInt( value );
+    		}
+    		else if ( "-t".equals( option )) {
+    			SearchService.DEFAULT_TIMEOUT = Long.parseLong( value );
+    		}
+    		else {
+    			System.err.println( "Unknown option: " + option );
+    			break;
+    		}
+    	}
+
+    	boolean index = true;
+    	if ( DiskIndex.exists( new File( SearchGUI.INDEX_DIR ))) {
+    		indexer.open( new File( SearchGUI.INDEX_DIR ), updateIndex );
+    		System.err.println( "Opened saved index" );
+    		index = updateIndex;
+    	}
+    	SearchServer server = new SearchServer( new SearchService( indexer ), port );
+    	server.start();
+    	System.err.println( "Listening on port " + server.getPort() );
+    	if ( index ) {
+    		long startTime = System.currentTimeMillis();
+    		for ( String dirName : dirNames ) {
+    			indexer.processFiles( new File( dirName ));
+    		}
+    		System.err.println( "Indexed in " + (System.currentTimeMillis() - startTime) + " ms" );
+    	}
+    }
+}
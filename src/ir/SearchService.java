@@ -0,0 +1,244 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ *   Runs searches on the index of an Indexer without a GUI.
+ *
+ *   Every search is a task of its own, so any number of them can run
+ *   at once. They read the last snapshot the index published, just
+ *   like the searches of the SearchGUI, so indexing may go on
+ *   meanwhile. On Java 21 and later each task gets a virtual thread.
+ *   On older runtimes THREADS threads search, at most QUEUE_SIZE
+ *   searches wait for them, and further ones are rejected with a
+ *   RejectedExecutionException.
+ *
+ *   A search that takes longer than its timeout is given up on: its
+ *   caller gets a TimeoutException and the task is cancelled. The
+ *   interrupt stops the evaluation at its next query term, document
+ *   or segment.
+ */
+public class SearchService implements Closeable {
+
+    /** Timeout of a search, in milliseconds, unless one is given. */
+    public static long DEFAULT_TIMEOUT = 10000;
+
+    /** Number of documents returned by a ranked search, unless told otherwise. */
+    public static int DEFAULT_RESULTS = SearchGUI.MAX_RESULTS;
+
+    /** Number of searches run at once where there are no virtual threads. */
+    public static int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Number of searches that may wait for one of the THREADS. */
+    public static int QUEUE_SIZE = 256;
+
+    private final Indexer indexer;
+
+    private final ExecutorService executor;
+
+
+    /**
+     *  Creates a service searching the index of @code{indexer}.
+     */
+    public SearchService( Indexer indexer ) {
+    	this( indexer, newExecutor() );
+    }
+
+    /**
+     *  Creates a service searching the index of @code{indexer}, running
+     *  the searches on @code{executor}.
+     */
+    public SearchService( Indexer indexer, ExecutorService executor ) {
+    	this.indexer = indexer;
+    	this.executor = executor;
+    }
+
+    /**
+     *  An executor with a virtual thread per task where the runtime
+     *  has virtual threads, and otherwise THREADS daemon threads with
+     *  a queue of QUEUE_SIZE tasks, which rejects the tasks that do
+     *  not fit.
+     */
+    public static ExecutorService newExecutor() {
+    	ExecutorService executor = newVirtualThreadExecutor();
+    	if ( executor != null ) {
+    		return executor;
+    	}
+    	return new ThreadPoolExecutor( THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+    				       new ArrayBlockingQueue<Runnable>( QUEUE_SIZE ), daemonThreads( "search" ));
+    }
+
+    /**
+     *  An executor with a virtual thread per task, or null if the
+     *  runtime has no virtual threads.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+    	try {
+    		Method m = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+    		return (ExecutorService) m.invoke( null );
+    	}
+    	catch ( ReflectiveOperationException e ) {
+    		return null;
+    	}
+    }
+
+    /**
+     *  Makes daemon threads called @code{name}.
+     */
+    static ThreadFactory daemonThreads( final String name ) {
+    	return new ThreadFactory() {
+    		public Thread newThread( Runnable r ) {
+    			Thread t = new Thread( r, name );
+    			t.setDaemon( true );
+    			return t;
+    		}
+    	};
+    }
+
+    /**  The executor the searches run on  */
+    public ExecutorService getExecutor() {
+    	return executor;
+    }
+
+    /**  The index being searched  */
+    public Index getIndex() {
+    	return indexer.index;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  Starts a search for @code{queryString}, which is normalized the
+     *  same way as the queries typed into the SearchGUI. Ranked
+     *  searches return the @code{k} best documents.
+     *
+     *  @throws RejectedExecutionException if too many searches are
+     *  waiting already.
+     */
+    public Future<PostingsList> submit( String queryString, final int queryType, final int rankingType, final int structureType, final int k ) {
+    	final Query query = new Query( SimpleTokenizer.normalize( queryString ));
+    	final Index index = indexer.index;
+    	return executor.submit( () -> index.search( query, queryType, rankingType, structureType, k ));
+    }
+
+    /**
+     *  Searches for @code{queryString} and waits for the result for at
+     *  most @code{timeout} milliseconds.
+     *
+     *  @throws TimeoutException if the search did not finish in time.
+     */
+    public PostingsList search( String queryString, int queryType, int rankingType, int structureType, int k, long timeout ) throws TimeoutException, InterruptedException {
+    	Future<PostingsList> result = submit( queryString, queryType, rankingType, structureType, k );
+    	try {
+    		return result.get( timeout, TimeUnit.MILLISECONDS );
+    	}
+    	catch ( TimeoutException e ) {
+    		result.cancel( true );
+    		throw e;
+    	}
+    	catch ( ExecutionException e ) {
+    		throw rethrow( e );
+    	}
+    }
+
+    /**
+     *  Searches for all of @code{queryStrings} at once, and waits at
+     *  most @code{timeout} milliseconds for all of them. The result
+     *  of a search that did not finish in time is null. If some of
+     *  them are rejected, the others are cancelled.
+     */
+    public List<PostingsList> searchAll( List<String> queryStrings, int queryType, int rankingType, int structureType, int k, long timeout ) throws InterruptedException {
+    	long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+    	ArrayList<Future<PostingsList>> futures = new ArrayList<Future<PostingsList>>();
+    	try {
+    		for ( String queryString : queryStrings ) {
+    			futures.add( submit( queryString, queryType, rankingType, structureType, k ));
+    		}
+    	}
+    	catch ( RejectedExecutionException e ) {
+    		for ( Future<PostingsList> result : futures ) {
+    			result.cancel( true );
+    		}
+    		throw e;
+    	}
+    	ArrayList<PostingsList> results = new ArrayList<PostingsList>();
+    	for ( Future<PostingsList> result : futures ) {
+    		try {
+    			results.add( result.get( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS ));
+    		}
+    		catch ( TimeoutException e ) {
+    			result.cancel( true );
+    			results.add( null );
+    		}
+    		catch ( ExecutionException e ) {
+    			for ( Future<PostingsList> other : futures ) {
+    				other.cancel( true );
+    			}
+    			throw rethrow( e );
+    		}
+    	}
+    	return results;
+    }
+
+    /**
+     *  The files the indexer has given up on, with the reasons.
+     */
+    public TreeMap<String,String> getQuarantined() {
+    	return indexer.catalog.getQuarantined();
+    }
+
+    /**
+     *  The path of a document, or null if the index does not know it.
+     */
+    public String getPath( int docID ) {
+    	return indexer.index.getDocuments().getPath( docID );
+    }
+
+    /**
+     *  Stops the threads of the service. Searches that are still
+     *  running are interrupted.
+     */
+    public void close() {
+    	executor.shutdownNow();
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  The unchecked exception that made a search fail.
+     */
+    private static RuntimeException rethrow( ExecutionException e ) {
+    	Throwable cause = e.getCause();
+    	if ( cause instanceof RuntimeException ) {
+    		return (RuntimeException) cause;
+    	}
+    	if ( cause instanceof Error ) {
+    		throw (Error) cause;
+    	}
+    	return new RuntimeException( cause );
+    }
+}
@@ -0,0 +1,533 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+
+/**
+ *   Evaluates queries against any Index, using only getPostings()
+ *   and the document tables. The postings lists are only read.
+ *
+ *   A Searcher can also evaluate a query on one segment of an
+ *   IndexSnapshot. Deletions and idf then come from the snapshot,
+ *   so that the scores are those of the whole collection.
+ *
+ *   The BIGRAM and SUBPHRASE structure types use the biwords of the
+ *   query, its words taken two at a time, if the index has them.
+ *   Phrase queries then look up biwords instead of comparing the
+ *   positions of every word. With BIGRAM, intersection and ranked
+ *   queries are evaluated on the biwords instead of the words, and
+ *   with SUBPHRASE, ranked queries score both, so that documents
+ *   with the query's phrases rank above those with only its words.
+ *
+ *   A search that is interrupted, as when a SearchService gives up on
+ *   it, stops with a CancellationException at the next query term or
+ *   candidate document.
+ */
+public class Searcher {
+
+	/** Skip documents that cannot reach the top k in ranked retrieval. */
+	public static boolean USE_MAXSCORE = true;
+
+    /** The index to search. */
+    private Index index;
+
+    /** The snapshot index is a segment of, or null. */
+    private IndexSnapshot snapshot;
+
+    /** The thread whose interrupt cancels the search, null for the one running it. */
+    private Thread caller;
+
+
+    public Searcher( Index index ) {
+    	this.index = index;
+    }
+
+    /**
+     *  Creates a Searcher for one segment of @code{snapshot}, searching
+     *  on behalf of @code{caller}.
+     */
+    Searcher( Index segment, IndexSnapshot snapshot, Thread caller ) {
+    	this.index = segment;
+    	this.snapshot = snapshot;
+    	this.caller = caller;
+    }
+
+
+    /**
+     *  Searches the index for postings matching the query.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return search( query, queryType, rankingType, structureType, Integer.MAX_VALUE );
+    }
+
+    /**
+     *  Searches the index for postings matching the query. Ranked
+     *  queries only return the k best documents.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
+    	long startTime = System.currentTimeMillis();
+    	PostingsList rList = new PostingsList();
+    	
+    	// Only do if the user specified a query
+		if (!query.terms.isEmpty()) {
+			rList = evaluate(query, queryType, structureType, k);
+    		
+		    if (SearchGUI.PRINT_TIMES)
+		    	System.out.println("Time taken to search: " + (System.currentTimeMillis() - startTime));
+    	}
+	    
+		return rList;
+    }
+
+    /**
+     *  Evaluates a non-empty query with the method for its type.
+     */
+    PostingsList evaluate( Query query, int queryType, int structureType, int k ) {
+    	boolean biwords = snapshot != null ? snapshot.hasBiwords() : index.hasBiwords();
+    	if (structureType != Index.UNIGRAM && biwords && query.terms.size() > 1) {
+    		if (queryType == Index.PHRASE_QUERY) {
+    			return biwordPhraseQuery(query);
+    		}
+    		query = biwordQuery(query, structureType == Index.SUBPHRASE && queryType == Index.RANKED_QUERY);
+    		PostingsList result = evaluate(query, queryType, Index.UNIGRAM, k);
+    		// The words may well be known even if their biwords are not
+    		return result == null ? new PostingsList() : result;
+    	}
+    	if (queryType == Index.INTERSECTION_QUERY) {
+    		return intersectQuery(query);
+    	}
+    	else if (queryType == Index.PHRASE_QUERY) {
+    		return phraseQuery(query);
+    	}
+    	else if (queryType == Index.RANKED_QUERY) {
+    		if (k == Integer.MAX_VALUE)
+    			return rankedQuery(query);
+    		else if (USE_MAXSCORE)
+    			return maxScoreQuery(query, k);
+    		else
+    			return rankedQuery(query, k);
+    	}
+    	return new PostingsList();
+    }
+
+    /**
+     *  Gives up on the search if the thread it runs for has been
+     *  interrupted.
+     */
+    private void checkInterrupted() {
+    	if ((caller != null ? caller : Thread.currentThread()).isInterrupted()) {
+    		throw new CancellationException("search interrupted");
+    	}
+    }
+
+    private boolean isDeleted( int docID ) {
+    	return index.isDeleted(docID) || (snapshot != null && snapshot.isDeleted(docID));
+    }
+
+    /**
+     *  The idf of a term, from the snapshot if the index is a segment
+     *  of one.
+     */
+    private double idf( String term, int termID, RankingStatistics stats ) {
+    	return snapshot != null ? snapshot.getIdf(term) : stats.getIdf(termID);
+    }
+    /**
+     *  Scores the documents term at a time into a ScoreAccumulator
+     *  owned by this query. The postings lists are only read, so
+     *  concurrent queries do not affect each other's scores.
+     */
+    public PostingsList rankedQuery(Query query) {
+    	RankingStatistics stats = index.getStatistics();
+    	ScoreAccumulator acc = accumulate(query, stats);
+    	PostingsList result = acc.toPostingsList();
+    	for (int i = 0; i < result.size(); i++) {
+			result.setScore(i, result.getScore(i) / stats.getLength(result.getDocID(i)));
+		}
+    	result.sort();
+    	return result;
+    }
+    
+    /**
+     *  Adds up tf * idf * weight for all query terms, term at a time.
+     */
+    private ScoreAccumulator accumulate(Query query, RankingStatistics stats) {
+		ScoreAccumulator acc = new ScoreAccumulator(stats.getDocumentCount());
+  
+    	for (String t : query.terms) {
+    		checkInterrupted();
+    		int termID = index.getTermID(t);
+    		PostingsList pl = index.getPostings(termID);
+    		
+    		if (pl != null) {
+	    		double idf = idf(t, termID, stats);
+	    		double weight = query.weights.get(t);
+	    		PostingsList.Cursor c = pl.getCursor();
+	    		
+	    		while(c.next()) {
+	    			if (isDeleted(c.getDocID()))
+	    				continue;
+	    			int tf = c.getTermFrequency();
+	    			acc.add(c.getDocID(), tf * idf * weight);
+	    		}
+    		}
+    	}
+    	return acc;
+    }
+    
+    /**
+     *  Like rankedQuery(Query), but keeps only the k best documents
+     *  in a TopKCollector instead of sorting all of them.
+     */
+    public PostingsList rankedQuery(Query query, int k) {
+    	RankingStatistics stats = index.getStatistics();
+    	ScoreAccumulator acc = accumulate(query, stats);
+    	TopKCollector top = new TopKCollector(Math.min(k, acc.size()));
+    	for (int i = 0; i < acc.size(); i++) {
+    		int docID = acc.getDocID(i);
+    		top.collect(docID, acc.getScore(docID) / stats.getLength(docID));
+    	}
+    	return top.toPostingsList();
+    }
+    
+    /**
+     *  Returns the k best documents, scored document at a time with
+     *  the MaxScore algorithm.
+     *
+     *  The query terms are ordered by the upper bound of their score,
+     *  idf * weight * PostingsList.getMaxWeight(). Once the k best
+     *  documents so far beat the summed bounds of the lowest terms,
+     *  those terms become non-essential: documents that only contain
+     *  them are never scored, and they are only looked up for
+     *  documents found in the essential lists.
+     */
+    public PostingsList maxScoreQuery(Query query, int k) {
+    	RankingStatistics stats = index.getStatistics();
+    	ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
+    	ArrayList<Double> termWeights = new ArrayList<Double>();
+    	for (String t : query.terms) {
+    		int termID = index.getTermID(t);
+    		PostingsList pl = index.getPostings(termID);
+    		if (pl != null) {
+    			lists.add(pl);
+    			termWeights.add(idf(t, termID, stats) * query.weights.get(t));
+    		}
+    	}
+    	int n = lists.size();
+    	// No more documents than the lists hold between them can be found
+    	long candidates = 0;
+    	for (PostingsList pl : lists) {
+    		candidates += pl.size();
+    	}
+    	
+    	// Order the terms by increasing upper bound
+    	Integer[] order = new Integer[n];
+    	for (int i = 0; i < n; i++) {
+    		order[i] = i;
+    	}
+    	double[] bound = new double[n];
+    	for (int i = 0; i < n; i++) {
+    		bound[i] = termWeights.get(i) * lists.get(i).getMaxWeight();
+    	}
+    	Arrays.sort(order, (a, b) -> Double.compare(bound[a], bound[b]));
+    	
+    	PostingsList.Cursor[] cursors = new PostingsList.Cursor[n];
+    	double[] weights = new double[n];
+    	double[] cumBound = new double[n];
+    	int[] current = new int[n];
+    	for (int i = 0; i < n; i++) {
+    		cursors[i] = lists.get(order[i]).getCursor();
+    		weights[i] = termWeights.get(order[i]);
+    		cumBound[i] = bound[order[i]] + (i > 0 ? cumBound[i-1] : 0);
+    		current[i] = cursors[i].next() ? cursors[i].getDocID() : Integer.MAX_VALUE;
+    	}
+    	
+    	TopKCollector top = new TopKCollector((int)Math.min(k, candidates));
+    	int firstEssential = 0;
+    	while (true) {
+    		checkInterrupted();
+    		// Terms whose summed bounds cannot beat the k-th best become non-essential
+    		while (firstEssential < n && top.isFull() && cumBound[firstEssential] <= top.threshold()) {
+    			firstEssential++;
+    		}
+    		int docID = Integer.MAX_VALUE;
+    		for (int i = firstEssential; i < n; i++) {
+    			docID = Math.min(docID, current[i]);
+    		}
+    		if (docID == Integer.MAX_VALUE) {
+    			break;
+    		}
+    		if (isDeleted(docID)) {
+    			for (int i = firstEssential; i < n; i++) {
+    				if (current[i] == docID) {
+    					current[i] = cursors[i].next() ? cursors[i].getDocID() : Integer.MAX_VALUE;
+    				}
+    			}
+    			continue;
+    		}
+    		
+    		double length = stats.getLength(docID);
+    		double score = 0;
+    		for (int i = firstEssential; i < n; i++) {
+    			if (current[i] == docID) {
+    				score += cursors[i].getTermFrequency() * weights[i] / length;
+    				current[i] = cursors[i].next() ? cursors[i].getDocID() : Integer.MAX_VALUE;
+    			}
+    		}
+    		for (int i = firstEssential - 1; i >= 0; i--) {
+    			if (score + cumBound[i] <= top.threshold()) {
+    				break;
+    			}
+    			if (current[i] < docID) {
+    				current[i] = cursors[i].advance(docID) ? cursors[i].getDocID() : Integer.MAX_VALUE;
+    			}
+    			if (current[i] == docID) {
+    				score += cursors[i].getTermFrequency() * weights[i] / length;
+    			}
+    		}
+    		top.collect(docID, score);
+    	}
+    	return top.toPostingsList();
+    }
+    
+    /**
+     *  Returns a query of the biwords of @code{query}, each weighted by
+     *  the mean weight of its words, and also of the words themselves
+     *  if @code{withWords} is set.
+     */
+    private static Query biwordQuery(Query query, boolean withWords) {
+    	Query biwords = withWords ? query.copy() : new Query();
+    	String previous = null;
+    	for (String term : query.terms) {
+    		if (previous != null) {
+    			String biword = TermDictionary.biword(previous, term);
+    			biwords.terms.add(biword);
+    			biwords.weights.put(biword, (query.weights.get(previous) + query.weights.get(term)) / 2);
+    		}
+    		previous = term;
+    	}
+    	biwords.queryLength = query.queryLength;
+    	return biwords;
+    }
+
+    /**
+     *  Finds the documents where the query terms occur next to each
+     *  other. The documents containing all terms are found first, by
+     *  leapfrogging the cursors in order of increasing document
+     *  frequency, and the relative positions are only checked there.
+     */
+    public PostingsList phraseQuery(Query query) {
+    	PostingsList answer = new PostingsList();
+    	int m = query.terms.size();
+    	PostingsList[] lists = getPostings(query);
+    	if (m == 0) {
+    		return answer;
+    	}
+    	if (lists == null) {
+    		return m == 1 ? null : answer;
+    	}
+    	if (m == 1) {
+    		return withoutDeleted(lists[0]);
+    	}
+    	int[] offsets = new int[m];
+    	for (int t = 0; t < m; t++) {
+    		offsets[t] = t;
+    	}
+    	return phrase(lists, offsets, m);
+    }
+
+    /**
+     *  Finds the documents where the query terms occur next to each
+     *  other, from the biwords of an index that has them. A phrase of
+     *  two words is the postings list of one biword. A longer phrase is
+     *  covered by every other biword and the last one, which are
+     *  intersected like the words in phraseQuery(), and their relative
+     *  positions checked.
+     */
+    public PostingsList biwordPhraseQuery(Query query) {
+    	int m = query.terms.size();
+    	if (m < 2) {
+    		return phraseQuery(query);
+    	}
+    	String[] words = query.terms.toArray(new String[m]);
+    	int[] offsets = new int[(m + 1) / 2];
+    	PostingsList[] lists = new PostingsList[offsets.length];
+    	for (int t = 0; t < offsets.length; t++) {
+    		offsets[t] = Math.min(2 * t, m - 2);
+    		lists[t] = index.getPostings(TermDictionary.biword(words[offsets[t]], words[offsets[t] + 1]));
+    		if (lists[t] == null) {
+    			return new PostingsList();
+    		}
+    	}
+    	return phrase(lists, offsets, m);
+    }
+
+    /**
+     *  Finds the documents where each list t has a position at
+     *  offsets[t] from the start of a phrase of @code{length} words,
+     *  and adds each match at the position of the phrase's last word.
+     */
+    private PostingsList phrase(PostingsList[] lists, int[] offsets, int length) {
+    	PostingsList answer = new PostingsList();
+    	int m = lists.length;
+    	Integer[] order = byFrequency(lists);
+    	PostingsList.Cursor[] cursors = new PostingsList.Cursor[m];
+    	for (int t = 0; t < m; t++) {
+    		cursors[t] = lists[t].getCursor();
+    	}
+    	PostingsList.Cursor rarest = cursors[order[0]];
+    	int[] next = new int[m];
+    	boolean more = rarest.next();
+    	while (more) {
+    		checkInterrupted();
+    		int docID = rarest.getDocID();
+    		int k = 1;
+    		for (; k < m; k++) {
+    			PostingsList.Cursor c = cursors[order[k]];
+    			if (!c.advance(docID)) {
+    				return answer;
+    			}
+    			if (c.getDocID() != docID) {
+    				break;
+    			}
+    		}
+    		if (k < m) {
+    			more = rarest.advance(cursors[order[k]].getDocID());
+    			continue;
+    		}
+    		if (!isDeleted(docID)) {
+    			// Each occurrence of the rarest term fixes where the phrase
+    			// would start, the other terms must be at their offsets from there
+    			Arrays.fill(next, 0);
+    			for (int x = 0; x < rarest.getTermFrequency(); x++) {
+    				int start = rarest.getPosition(x) - offsets[order[0]];
+    				boolean match = start >= 0;
+    				for (int t = 0; t < m && match; t++) {
+    					PostingsList.Cursor c = cursors[t];
+    					int tf = c.getTermFrequency();
+    					while (next[t] < tf && c.getPosition(next[t]) < start + offsets[t]) {
+    						next[t]++;
+    					}
+    					match = next[t] < tf && c.getPosition(next[t]) == start + offsets[t];
+    				}
+    				if (match) {
+    					answer.add(docID, start + length - 1);
+    				}
+    			}
+    		}
+    		more = rarest.next();
+    	}
+    	return answer;
+    }
+    
+    /**
+     *  Returns the postings lists of the query terms, in query order,
+     *  or null if some term does not occur in the index.
+     */
+    private PostingsList[] getPostings(Query query) {
+    	PostingsList[] lists = new PostingsList[query.terms.size()];
+    	int t = 0;
+    	for (String token : query.terms) {
+    		lists[t] = index.getPostings(token);
+    		if (lists[t] == null) {
+    			return null;
+    		}
+    		t++;
+    	}
+    	return lists;
+    }
+    
+    /**
+     *  Returns the indices of lists, ordered by increasing length.
+     */
+    private static Integer[] byFrequency(PostingsList[] lists) {
+    	Integer[] order = new Integer[lists.length];
+    	for (int i = 0; i < lists.length; i++) {
+    		order[i] = i;
+    	}
+    	Arrays.sort(order, (a, b) -> Integer.compare(lists[a].size(), lists[b].size()));
+    	return order;
+    }
+
+    /**
+     *  Returns the documents of a single term's postings that have not
+     *  been deleted, as a new list.
+     */
+    private PostingsList withoutDeleted( PostingsList pl ) {
+    	if (pl == null) {
+    		return null;
+    	}
+    	PostingsList answer = new PostingsList();
+    	PostingsList.Cursor c = pl.getCursor();
+    	while (c.next()) {
+    		if (!isDeleted(c.getDocID()))
+    			answer.add(c.getDocID());
+    	}
+    	return answer;
+    }
+
+    /**
+     *  Finds the documents containing all query terms. The lists are
+     *  intersected from the rarest term up, so the intermediate result
+     *  never grows beyond the shortest list, and the search stops as
+     *  soon as it is empty.
+     */
+    public PostingsList intersectQuery(Query query) {
+    	PostingsList intersection = new PostingsList();
+    	int m = query.terms.size();
+    	PostingsList[] lists = getPostings(query);
+    	if (m == 0) {
+    		return intersection;
+    	}
+    	if (lists == null) {
+    		return m == 1 ? null : intersection;
+    	}
+    	
+    	Integer[] order = byFrequency(lists);
+    	intersection = withoutDeleted(lists[order[0]]);
+    	for (int k = 1; k < m && !intersection.isEmpty(); k++) {
+    		checkInterrupted();
+    		intersection = intersect(intersection, lists[order[k]]);
+    	}
+    	return intersection;
+    }
+    /**
+     * Finds the intersection between the two PostingsLists. The cursor
+     * that is behind gallops to the other one's docID, so a short list
+     * intersected with a long one costs about the short list's length
+     * times the log of the gap between its documents.
+     * 
+     * @param p1 - The first PostingsList to intersect
+     * @param p2 - The second
+     * @return - The intersection between p1 and p2
+     */
+    private PostingsList intersect( PostingsList pl1, PostingsList pl2 ) {
+    	PostingsList answer = new PostingsList();
+    	if (!(pl1 == null || pl2 == null)) {
+    		PostingsList.Cursor c1 = pl1.getCursor();
+	    	PostingsList.Cursor c2 = pl2.getCursor();
+	    	
+	    	boolean more = c1.next() && c2.next();
+	    	while (more) {
+	    		if (c1.getDocID() == c2.getDocID()) {
+	    			if (!isDeleted(c1.getDocID()))
+	    				answer.add(c1.getDocID());
+	    			more = c1.next() && c2.next();
+	    		}
+	    		else if (c1.getDocID() < c2.getDocID()) {
+	    			more = c1.advance(c2.getDocID());
+	    		}
+	    		else {
+	    			more = c2.advance(c1.getDocID());
+	    		}
+	    	}
+    	}
+    	return answer;
+    }
+}
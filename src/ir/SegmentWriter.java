@@ -0,0 +1,384 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+
+/**
+ *   Writes an index to a segment directory that DiskIndex can open.
+ *
+ *   Every save writes a new generation of the segment into a directory
+ *   of its own, segment-<generation>, and then commits it by replacing
+ *   the file COMMIT_FILE, which names the generation, in one atomic
+ *   move. A reader thus sees either the old segment or the new one,
+ *   never a mix, and files that a DiskIndex has mapped are never
+ *   written over. The generation before the committed one is kept for
+ *   readers that are still opening it, older ones are deleted.
+ *
+ *   A segment consists of four files:
+ *
+ *   terms.dict     magic, version, postings codec id, number of terms,
+ *                  flags (FLAG_BIWORDS if the biwords of all documents
+ *                  are indexed), then one fixed size entry per term in
+ *                  sorted order
+ *                  (offset and length of the term's UTF-8 bytes, offset
+ *                  and length of its postings, df and max weight), then
+ *                  the UTF-8 bytes of all terms.
+ *   postings.dat   for each term, its PostingsList.encode() bytes.
+ *   docs.dat       magic, version, number of documents, then for each
+ *                  document its docID, length, Euclidean norm and path.
+ *   forward.dat    magic, version, number of documents, then for each
+ *                  document in docID order its docID, the index of its
+ *                  first pair and its number of pairs, then the pairs
+ *                  (termID, tf) of the words, not biwords, of all
+ *                  documents, each document's in termID order.
+ */
+public class SegmentWriter {
+
+    public static final String TERMS_FILE = "terms.dict";
+    public static final String POSTINGS_FILE = "postings.dat";
+    public static final String DOCS_FILE = "docs.dat";
+    public static final String FORWARD_FILE = "forward.dat";
+
+    /** The file naming the committed generation, next to the generation directories. */
+    public static final String COMMIT_FILE = "segment.gen";
+
+    /** The directory of a generation is this followed by the generation. */
+    public static final String GENERATION_PREFIX = "segment-";
+
+    public static final int MAGIC = 0x49525347;
+    public static final int VERSION = 4;
+
+    /** Bytes in the header of terms.dict. */
+    public static final int TERMS_HEADER = 20;
+
+    /** Flag of a segment where every document has its biwords indexed. */
+    public static final int FLAG_BIWORDS = 1;
+
+    /** Bytes per entry in terms.dict. */
+    public static final int TERM_ENTRY = 36;
+
+    /** Bytes in the header of forward.dat, and per document entry. */
+    public static final int FORWARD_HEADER = 12;
+    public static final int FORWARD_ENTRY = 16;
+
+    /** The codec postings are written with. */
+    public static PostingsCodec codec = new PForDeltaCodec();
+
+
+    /**
+     *  Writes all terms and documents of @code{index} to @code{dir} as
+     *  a new generation, and commits it.
+     */
+    public static void write( Index index, File dir ) throws IOException {
+    	if ( !dir.isDirectory() && !dir.mkdirs() ) {
+    		throw new IOException( "Cannot create index directory " + dir );
+    	}
+    	long previous = committedGeneration( dir );
+    	long generation = Math.max( previous, lastGeneration( dir )) + 1;
+    	File segment = generationDir( dir, generation );
+    	if ( !segment.mkdir() ) {
+    		throw new IOException( "Cannot create segment directory " + segment );
+    	}
+    	writeSegment( index, segment );
+    	commit( dir, generation );
+    	deleteGenerations( dir, previous, generation );
+    }
+
+    /**
+     *  Writes the files of a segment to the empty directory @code{dir},
+     *  and forces them to disk.
+     */
+    private static void writeSegment( Index index, File dir ) throws IOException {
+    	ArrayList<String> terms = new ArrayList<String>();
+    	Iterator<String> it = index.getDictionary();
+    	while ( it.hasNext() ) {
+    		terms.add( it.next() );
+    	}
+    	Collections.sort( terms );
+
+    	// Postings of deleted documents are left out, and so are terms
+    	// that only occurred in deleted documents
+    	ArrayList<String> live = new ArrayList<String>();
+    	ArrayList<Long> postingsOffsets = new ArrayList<Long>();
+    	ArrayList<Integer> postingsLengths = new ArrayList<Integer>();
+    	ArrayList<Integer> dfs = new ArrayList<Integer>();
+    	ArrayList<Double> maxWeights = new ArrayList<Double>();
+    	// The docID, termID and tf of every posting of a word, for forward.dat
+    	int[] postingDocs = new int[1024];
+    	int[] postingTerms = new int[1024];
+    	int[] postingTfs = new int[1024];
+    	int postingCount = 0;
+    	FileOutputStream file = new FileOutputStream( new File( dir, POSTINGS_FILE ));
+    	try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( file, 1 << 16 ))) {
+    		long offset = 0;
+    		for ( String term : terms ) {
+    			PostingsList pl = withoutDeleted( index, index.getPostings( term ));
+    			if ( !pl.isEmpty() ) {
+    				byte[] b = pl.encode( codec );
+    				out.write( b );
+    				if ( !TermDictionary.isBiword( term )) {
+    					if ( postingCount + pl.size() > postingDocs.length ) {
+    						int capacity = Math.max( postingCount + pl.size(), postingDocs.length * 2 );
+    						postingDocs = Arrays.copyOf( postingDocs, capacity );
+    						postingTerms = Arrays.copyOf( postingTerms, capacity );
+    						postingTfs = Arrays.copyOf( postingTfs, capacity );
+    					}
+    					for ( int i=0; i<pl.size(); i++ ) {
+    						postingDocs[postingCount] = pl.getDocID( i );
+    						postingTerms[postingCount] = live.size();
+    						postingTfs[postingCount] = pl.getTermFrequency( i );
+    						postingCount++;
+    					}
+    				}
+    				live.add( term );
+    				postingsOffsets.add( offset );
+    				postingsLengths.add( b.length );
+    				dfs.add( pl.size() );
+    				maxWeights.add( pl.getMaxWeight() );
+    				offset += b.length;
+    			}
+    		}
+    		sync( out, file );
+    	}
+    	terms = live;
+    	byte[][] termBytes = new byte[terms.size()][];
+    	for ( int i=0; i<terms.size(); i++ ) {
+    		termBytes[i] = terms.get( i ).getBytes( StandardCharsets.UTF_8 );
+    	}
+
+    	file = new FileOutputStream( new File( dir, TERMS_FILE ));
+    	try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( file ))) {
+    		out.writeInt( MAGIC );
+    		out.writeInt( VERSION );
+    		out.writeInt( codec.getId() );
+    		out.writeInt( terms.size() );
+    		out.writeInt( index.hasBiwords() ? FLAG_BIWORDS : 0 );
+    		long termOffset = TERMS_HEADER + (long) TERM_ENTRY * terms.size();
+    		for ( int i=0; i<terms.size(); i++ ) {
+    			out.writeLong( termOffset );
+    			out.writeInt( termBytes[i].length );
+    			out.writeLong( postingsOffsets.get( i ));
+    			out.writeInt( postingsLengths.get( i ));
+    			out.writeInt( dfs.get( i ));
+    			out.writeDouble( maxWeights.get( i ));
+    			termOffset += termBytes[i].length;
+    		}
+    		for ( byte[] b : termBytes ) {
+    			out.write( b );
+    		}
+    		sync( out, file );
+    	}
+
+    	DocumentStore documents = index.getDocuments();
+    	file = new FileOutputStream( new File( dir, DOCS_FILE ));
+    	try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( file ))) {
+    		out.writeInt( MAGIC );
+    		out.writeInt( VERSION );
+    		out.writeInt( documents.size() );
+    		for ( int docID=documents.nextDocID( 0 ); docID>=0; docID=documents.nextDocID( docID+1 )) {
+    			String path = documents.getPath( docID );
+    			out.writeInt( docID );
+    			out.writeInt( documents.getLength( docID ));
+    			out.writeFloat( index.getStatistics().getEuclideanNorm( docID ));
+    			out.writeUTF( path == null ? "" : path );
+    		}
+    		sync( out, file );
+    	}
+
+    	writeForward( dir, documents, postingDocs, postingTerms, postingTfs, postingCount );
+    }
+
+    /**
+     *  Writes forward.dat from the first @code{n} postings of the words,
+     *  given by docID, termID and tf in increasing termID order.
+     */
+    private static void writeForward( File dir, DocumentStore documents, int[] docs, int[] termIDs, int[] tfs, int n ) throws IOException {
+    	int maxDocID = -1;
+    	for ( int d=documents.nextDocID( 0 ); d>=0; d=documents.nextDocID( d+1 )) {
+    		maxDocID = d;
+    	}
+    	// Sort the postings by docID, which keeps each document's in termID order
+    	int[] first = new int[maxDocID + 2];
+    	for ( int i=0; i<n; i++ ) {
+    		first[docs[i] + 1]++;
+    	}
+    	for ( int d=0; d<=maxDocID; d++ ) {
+    		first[d + 1] += first[d];
+    	}
+    	int[] next = Arrays.copyOf( first, first.length );
+    	int[] sortedTermIDs = new int[n];
+    	int[] sortedTfs = new int[n];
+    	for ( int i=0; i<n; i++ ) {
+    		int p = next[docs[i]]++;
+    		sortedTermIDs[p] = termIDs[i];
+    		sortedTfs[p] = tfs[i];
+    	}
+
+    	FileOutputStream file = new FileOutputStream( new File( dir, FORWARD_FILE ));
+    	try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( file, 1 << 16 ))) {
+    		out.writeInt( MAGIC );
+    		out.writeInt( VERSION );
+    		out.writeInt( documents.size() );
+    		for ( int d=documents.nextDocID( 0 ); d>=0; d=documents.nextDocID( d+1 )) {
+    			out.writeInt( d );
+    			out.writeLong( first[d] );
+    			out.writeInt( first[d + 1] - first[d] );
+    		}
+    		for ( int i=0; i<n; i++ ) {
+    			out.writeInt( sortedTermIDs[i] );
+    			out.writeInt( sortedTfs[i] );
+    		}
+    		sync( out, file );
+    	}
+    }
+
+    /**
+     *  Flushes @code{out} and forces what was written to @code{file}
+     *  to disk, so that it is there before the commit that refers to it.
+     */
+    private static void sync( DataOutputStream out, FileOutputStream file ) throws IOException {
+    	out.flush();
+    	file.getFD().sync();
+    }
+
+    /**
+     *  Makes @code{generation} the committed generation of @code{dir},
+     *  by moving a new COMMIT_FILE over the old one in one step.
+     */
+    private static void commit( File dir, long generation ) throws IOException {
+    	File temp = new File( dir, COMMIT_FILE + ".tmp" );
+    	FileOutputStream file = new FileOutputStream( temp );
+    	try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( file ))) {
+    		out.writeInt( MAGIC );
+    		out.writeLong( generation );
+    		sync( out, file );
+    	}
+    	Files.move( temp.toPath(), new File( dir, COMMIT_FILE ).toPath(),
+    				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    /**
+     *  Returns the generation committed in @code{dir}, or -1 if there
+     *  is none.
+     */
+    public static long committedGeneration( File dir ) throws IOException {
+    	File f = new File( dir, COMMIT_FILE );
+    	if ( !f.isFile() ) {
+    		return -1;
+    	}
+    	try ( DataInputStream in = new DataInputStream( new FileInputStream( f ))) {
+    		if ( in.readInt() != MAGIC ) {
+    			throw new IOException( "Not a segment commit: " + f );
+    		}
+    		return in.readLong();
+    	}
+    }
+
+    /**  The directory of generation @code{generation} of the segment in @code{dir}  */
+    public static File generationDir( File dir, long generation ) {
+    	return new File( dir, GENERATION_PREFIX + generation );
+    }
+
+    /**
+     *  Returns the generation of a directory name, or -1 if it is not
+     *  the name of a generation directory.
+     */
+    private static long generationOf( String name ) {
+    	if ( !name.startsWith( GENERATION_PREFIX )) {
+    		return -1;
+    	}
+    	try {
+    		return Long.parseLong( name.substring( GENERATION_PREFIX.length() ));
+    	}
+    	catch ( NumberFormatException e ) {
+    		return -1;
+    	}
+    }
+
+    /**
+     *  The highest generation with a directory in @code{dir}, committed
+     *  or not, or -1 if there is none.
+     */
+    private static long lastGeneration( File dir ) {
+    	long last = -1;
+    	String[] names = dir.list();
+    	if ( names != null ) {
+    		for ( String name : names ) {
+    			last = Math.max( last, generationOf( name ));
+    		}
+    	}
+    	return last;
+    }
+
+    /**
+     *  Deletes the generations of @code{dir} other than @code{previous}
+     *  and @code{current}, and the files of a segment saved before there
+     *  were generations. A file that cannot be deleted, as one that is
+     *  still mapped on Windows, is left for the next save.
+     */
+    private static void deleteGenerations( File dir, long previous, long current ) {
+    	String[] names = dir.list();
+    	if ( names == null ) {
+    		return;
+    	}
+    	for ( String name : names ) {
+    		long generation = generationOf( name );
+    		if ( generation >= 0 && generation != previous && generation != current ) {
+    			File[] files = new File( dir, name ).listFiles();
+    			if ( files != null ) {
+    				for ( File f : files ) {
+    					f.delete();
+    				}
+    			}
+    			new File( dir, name ).delete();
+    		}
+    	}
+    	for ( String name : new String[] { POSTINGS_FILE, TERMS_FILE, DOCS_FILE, FORWARD_FILE } ) {
+    		new File( dir, name ).delete();
+    		new File( dir, name + ".tmp" ).delete();
+    	}
+    }
+
+    /**
+     *  Returns @code{pl}, or a copy without the postings of deleted documents.
+     */
+    private static PostingsList withoutDeleted( Index index, PostingsList pl ) {
+    	PostingsList.Cursor c = pl.getCursor();
+    	boolean hasDeleted = false;
+    	while ( !hasDeleted && c.next() ) {
+    		hasDeleted = index.isDeleted( c.getDocID() );
+    	}
+    	if ( !hasDeleted ) {
+    		return pl;
+    	}
+    	PostingsList live = new PostingsList();
+    	live.updateMaxWeight( pl.getMaxWeight() );
+    	c = pl.getCursor();
+    	while ( c.next() ) {
+    		if ( !index.isDeleted( c.getDocID() )) {
+    			for ( int j=0; j<c.getTermFrequency(); j++ ) {
+    				live.add( c.getDocID(), c.getPosition( j ));
+    			}
+    		}
+    	}
+    	return live;
+    }
+}
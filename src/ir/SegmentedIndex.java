@@ -0,0 +1,431 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+
+
+/**
+ *   An index that can be searched while it is being written.
+ *
+ *   New documents go into a HashedIndex buffer that only the writer
+ *   sees. When the buffer is flushed it becomes an immutable segment,
+ *   and a new IndexSnapshot holding it is published by replacing one
+ *   volatile reference. Searches read that reference once and run on
+ *   the snapshot, so they take no locks and always see a consistent
+ *   set of documents, and indexing never holds them up.
+ *
+ *   Deleting a document that has been published only records its
+ *   docID. The deletion becomes visible with the next snapshot, at the
+ *   same time as the documents indexed since, so a changed file is
+ *   never found twice or not at all.
+ *
+ *   A MergeScheduler merges the segments in the background, following
+ *   a TieredMergePolicy, so that a search never has to visit more than
+ *   a few segments. Should the merges fall behind, flush() waits for
+ *   them once a shard has MAX_SEGMENTS segments.
+ *
+ *   The documents can be partitioned into shards by docID % shards.
+ *   Each shard has a buffer of its own, and its segments are only
+ *   merged with each other, so the IndexSnapshot can search the
+ *   shards in parallel. The buffers share one TermDictionary until
+ *   they are flushed together.
+ *
+ *   Only one thread at a time may change the index, including flush()
+ *   and cleanup(): a termID from getTermDictionary() is only valid
+ *   until the buffers are flushed.
+ */
+public class SegmentedIndex implements Index {
+
+    /** Number of documents buffered before they are published as a segment. */
+    public static int FLUSH_DOCUMENTS = 1000;
+
+    /** Number of segments at which flushing waits for the merges. */
+    public static int MAX_SEGMENTS = 32;
+
+    /** Number of shards of a new SegmentedIndex. */
+    public static int SHARDS = 1;
+
+    /** What searches see. Replaced, never changed. */
+    private volatile IndexSnapshot snapshot = new IndexSnapshot( new Index[0], new BitSet(), 0 );
+
+    /** The documents of each shard that have not been published yet. */
+    private final HashedIndex[] buffers;
+
+    /** Number of documents in the buffers. */
+    private int buffered = 0;
+
+    /** Published documents that have been deleted since the last snapshot. */
+    private final BitSet pendingDeletes = new BitSet();
+
+    /** The path and length of every document, published or not. */
+    private final DocumentStore documents = new DocumentStore();
+
+    /** Merges the published segments. */
+    private final MergeScheduler merges = new MergeScheduler( this );
+
+    /** Results of searches on the recent snapshots. */
+    private final QueryCache cache = new QueryCache();
+
+
+    public SegmentedIndex() {
+    	this( SHARDS );
+    }
+
+    /**
+     *  Creates an empty index that partitions its documents into
+     *  @code{shards} shards.
+     */
+    public SegmentedIndex( int shards ) {
+    	if ( shards < 1 ) {
+    		throw new IllegalArgumentException( "Need at least one shard, not " + shards );
+    	}
+    	buffers = new HashedIndex[shards];
+    	newBuffers();
+    }
+
+    /**
+     *  Opens the segment saved in @code{dir} as the first segment of
+     *  each shard of a new SegmentedIndex. With one shard the saved
+     *  segment is searched from disk as it is, and only copied onto the
+     *  heap when it is merged; saving the index again does not disturb
+     *  it, as SegmentWriter saves to a new generation directory. With
+     *  more shards its documents are split into a HashedIndex per shard,
+     *  and so is a segment saved without the document vectors that
+     *  relevance feedback needs.
+     */
+    public static SegmentedIndex load( File dir ) throws IOException {
+    	SegmentedIndex index = new SegmentedIndex();
+    	int n = index.buffers.length;
+    	DiskIndex saved = new DiskIndex( dir );
+    	DocumentStore docs = saved.getDocuments();
+    	for ( int d=docs.nextDocID( 0 ); d>=0; d=docs.nextDocID( d+1 )) {
+    		index.documents.add( d, docs.getPath( d ) == null ? "" : docs.getPath( d ));
+    		index.documents.setLength( d, docs.getLength( d ));
+    	}
+    	ArrayList<Index> segments = new ArrayList<Index>();
+    	ArrayList<Integer> shards = new ArrayList<Integer>();
+    	if ( n == 1 && saved.hasDocumentVectors() ) {
+    		if ( docs.size() > 0 ) {
+    			segments.add( saved );
+    			shards.add( 0 );
+    		}
+    	}
+    	else {
+    		for ( int s=0; s<n; s++ ) {
+    			final int shard = s;
+    			HashedIndex segment = HashedIndex.copyOf( saved, n == 1 ? null : d -> d % n == shard, null );
+    			if ( segment.getDocuments().size() > 0 ) {
+    				segments.add( segment );
+    				shards.add( s );
+    			}
+    		}
+    	}
+    	index.snapshot = new IndexSnapshot( segments.toArray( new Index[segments.size()] ), toArray( shards ), new BitSet(), 1 );
+    	return index;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *  Returns the snapshot that searches see now. Later changes to the
+     *  index do not affect it.
+     */
+    public IndexSnapshot getSnapshot() {
+    	return snapshot;
+    }
+
+    /**
+     *  Publishes the buffered documents as a new segment, together with
+     *  the deletions since the last snapshot. Does nothing if nothing
+     *  has changed.
+     */
+    public synchronized void flush() {
+    	IndexSnapshot current = snapshot;
+    	if ( buffered == 0 && pendingDeletes.isEmpty() ) {
+    		return;
+    	}
+    	ArrayList<Index> segments = new ArrayList<Index>( Arrays.asList( current.getSegments() ));
+    	ArrayList<Integer> shards = new ArrayList<Integer>();
+    	for ( int s=0; s<segments.size(); s++ ) {
+    		shards.add( current.getShard( s ));
+    	}
+    	if ( buffered > 0 ) {
+    		for ( int s=0; s<buffers.length; s++ ) {
+    			if ( buffers[s].getDocuments().size() > 0 ) {
+    				segments.add( buffers[s] );
+    				shards.add( s );
+    			}
+    		}
+    		newBuffers();
+    	}
+    	BitSet deleted = current.getDeleted();
+    	if ( !pendingDeletes.isEmpty() ) {
+    		deleted = (BitSet) deleted.clone();
+    		deleted.or( pendingDeletes );
+    		pendingDeletes.clear();
+    	}
+    	snapshot = new IndexSnapshot( segments.toArray( new Index[segments.size()] ), toArray( shards ), deleted, current.getGeneration() + 1 );
+    	// No search will look for the results of older generations again
+    	cache.clear();
+    	merges.maybeMerge();
+    	try {
+    		while ( largestShard( snapshot ) >= MAX_SEGMENTS && merges.isBusy() ) {
+    			wait( 100 );
+    		}
+    	}
+    	catch ( InterruptedException e ) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+    /**
+     *  Publishes a snapshot where @code{merged} takes the place of
+     *  @code{segments}, and the documents in @code{purged}, which the
+     *  merge left out, are forgotten. Called by the MergeScheduler.
+     *  Searches find the same documents as before, so the snapshot
+     *  keeps the generation, and the cached results stay valid.
+     */
+    synchronized void replaceSegments( Index[] segments, Index merged, BitSet purged ) {
+    	IndexSnapshot current = snapshot;
+    	Index[] old = current.getSegments();
+    	ArrayList<Index> kept = new ArrayList<Index>();
+    	ArrayList<Integer> shards = new ArrayList<Integer>();
+    	for ( int s=0; s<old.length; s++ ) {
+    		if ( old[s] == segments[0] && merged.getDocuments().size() > 0 ) {
+    			kept.add( merged );
+    			shards.add( current.getShard( s ));
+    		}
+    		if ( !Arrays.asList( segments ).contains( old[s] )) {
+    			kept.add( old[s] );
+    			shards.add( current.getShard( s ));
+    		}
+    	}
+    	BitSet deleted = current.getDeleted();
+    	if ( !purged.isEmpty() ) {
+    		deleted = (BitSet) deleted.clone();
+    		deleted.andNot( purged );
+    		for ( int d=purged.nextSetBit( 0 ); d>=0; d=purged.nextSetBit( d+1 )) {
+    			documents.remove( d );
+    		}
+    	}
+    	snapshot = new IndexSnapshot( kept.toArray( new Index[kept.size()] ), toArray( shards ), deleted, current.getGeneration() );
+    	notifyAll();
+    }
+
+    /**
+     *  Gives every shard a new, empty buffer. The buffers share a new
+     *  TermDictionary, so a termID means the same term in all of them.
+     */
+    private void newBuffers() {
+    	TermDictionary terms = new TermDictionary();
+    	for ( int s=0; s<buffers.length; s++ ) {
+    		buffers[s] = new HashedIndex( terms );
+    	}
+    	buffered = 0;
+    }
+
+    /**
+     *  The buffer of the shard that @code{docID} belongs to.
+     */
+    private HashedIndex buffer( int docID ) {
+    	return buffers[docID % buffers.length];
+    }
+
+    /**
+     *  The number of segments in the shard of @code{snapshot} that has
+     *  the most.
+     */
+    private int largestShard( IndexSnapshot snapshot ) {
+    	int[] counts = new int[buffers.length];
+    	int max = 0;
+    	for ( int s=0; s<snapshot.getSegments().length; s++ ) {
+    		max = Math.max( max, ++counts[snapshot.getShard( s )] );
+    	}
+    	return max;
+    }
+
+    private static int[] toArray( ArrayList<Integer> list ) {
+    	int[] a = new int[list.size()];
+    	for ( int i=0; i<a.length; i++ ) {
+    		a[i] = list.get( i );
+    	}
+    	return a;
+    }
+
+    /**
+     *  Waits until the background merges are done.
+     */
+    public void waitForMerges() throws InterruptedException {
+    	merges.waitForMerges();
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    public synchronized void insert( String token, int docID, int offset ) {
+    	buffer( docID ).insert( token, docID, offset );
+    }
+
+    public synchronized void insert( int termID, int docID, int offset ) {
+    	buffer( docID ).insert( termID, docID, offset );
+    }
+
+    /**
+     *  The dictionary of the buffers. Its termIDs are only valid until
+     *  the current document is finished, which may flush the buffers.
+     */
+    public synchronized TermDictionary getTermDictionary() {
+    	return buffers[0].getTermDictionary();
+    }
+
+    /**
+     *  Finishes a document in its buffer, and flushes the buffers once
+     *  they hold FLUSH_DOCUMENTS documents.
+     */
+    public synchronized void finishDocument( int docID, int length ) {
+    	HashedIndex buffer = buffer( docID );
+    	String path = documents.getPath( docID );
+    	if ( !buffer.getDocuments().contains( docID )) {
+    		buffered++;
+    	}
+    	buffer.getDocuments().add( docID, path == null ? "" : path );
+    	buffer.finishDocument( docID, length );
+    	documents.setLength( docID, length );
+    	if ( buffered >= FLUSH_DOCUMENTS ) {
+    		flush();
+    	}
+    }
+
+    /**
+     *  Deletes a document. A buffered document is removed at once, a
+     *  published one disappears from searches with the next snapshot.
+     */
+    public synchronized void delete( int docID ) {
+    	HashedIndex buffer = buffer( docID );
+    	if ( buffer.getDocuments().contains( docID )) {
+    		buffer.delete( docID );
+    		documents.remove( docID );
+    		buffered--;
+    	}
+    	else {
+    		pendingDeletes.set( docID );
+    	}
+    }
+
+    /**
+     *  The documents of the index, published or not. Deleted documents
+     *  keep their paths, since older snapshots may still find them.
+     */
+    public DocumentStore getDocuments() {
+    	return documents;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    public boolean isDeleted( int docID ) {
+    	return snapshot.isDeleted( docID );
+    }
+
+    public boolean hasBiwords() {
+    	return snapshot.hasBiwords();
+    }
+
+    public Iterator<String> getDictionary() {
+    	return snapshot.getDictionary();
+    }
+
+    public int getTermID( String token ) {
+    	return snapshot.getTermID( token );
+    }
+
+    public String getTerm( int termID ) {
+    	return snapshot.getTerm( termID );
+    }
+
+    public PostingsList getPostings( String token ) {
+    	return snapshot.getPostings( token );
+    }
+
+    public PostingsList getPostings( int termID ) {
+    	return snapshot.getPostings( termID );
+    }
+
+    public int getDocumentFrequency( int termID ) {
+    	return snapshot.getDocumentFrequency( termID );
+    }
+
+    public RankingStatistics getStatistics() {
+    	return snapshot.getStatistics();
+    }
+
+    public HashMap<String, Integer> getDocument( int docID ) {
+    	return snapshot.getDocument( docID );
+    }
+
+    public ForwardIndex getForwardIndex() {
+    	return null;
+    }
+
+    /**
+     *  Searches the current snapshot for postings matching the query.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType ) {
+    	return search( query, queryType, rankingType, structureType, Integer.MAX_VALUE );
+    }
+
+    /**
+     *  Searches the current snapshot for postings matching the query.
+     *  Ranked queries only return the k best documents. Results of
+     *  searches done before on the same generation are taken from
+     *  the QueryCache, and must not be changed.
+     */
+    public PostingsList search( Query query, int queryType, int rankingType, int structureType, int k ) {
+    	IndexSnapshot current = snapshot;
+    	String key = QueryCache.key( current.getGeneration(), query, queryType, rankingType, structureType, k );
+    	PostingsList result = cache.get( key );
+    	if ( result == null ) {
+    		result = current.search( query, queryType, rankingType, structureType, k );
+    		if ( result != null ) {
+    			cache.put( key, result );
+    		}
+    	}
+    	return result;
+    }
+
+    /**
+     *  The cache of search results, whose counters tell how well it
+     *  works.
+     */
+    public QueryCache getQueryCache() {
+    	return cache;
+    }
+
+    /**
+     *  Publishes everything and saves the live documents of all
+     *  segments as one segment in SearchGUI.INDEX_DIR.
+     */
+    public void cleanup() {
+    	flush();
+    	try {
+    		SegmentWriter.write( snapshot, new File( SearchGUI.INDEX_DIR ));
+    	}
+    	catch ( IOException e ) {
+    		e.printStackTrace();
+    	}
+    }
+}
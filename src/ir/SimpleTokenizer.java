@@ -9,6 +9,7 @@ package ir;
 
 import java.io.Reader;
 import java.io.IOException;
+import java.util.Arrays;
 
 
 public class SimpleTokenizer {
@@ -31,14 +32,20 @@ public class SimpleTokenizer {
     /** The current position in the buffer. */
     int ptr = 0;
 
-    /** Starting position of current token, or -1 if we're between tokens. */
-    int tokenStart = -1;
+    /** Number of characters in the buffer. */
+    int limit = 0;
 
-    /** The next token to emit. */
-    String nextTok;
+    /** The current token, normalized. Reused for every token. */
+    char[] term = new char[64];
 
-    /** @code{true} if we've started reading tokens. */
-    boolean started_reading = false;
+    /** Length of the current token. */
+    int termLength = 0;
+
+    /** @code{true} if hasMoreTokens() has read the next token ahead. */
+    boolean peeked = false;
+
+    /** What the read-ahead call to readToken() returned. */
+    boolean peekedResult;
 
     /** Handling of non-standard characters */
     static final char[] special_char =
@@ -53,6 +60,26 @@ public class SimpleTokenizer {
 
 
 
+    /**
+     *  The normalized form of every char, or 0 if the char cannot occur
+     *  in a token. Chars that map to '#' belong to a token but are
+     *  left out of it.
+     */
+    static final char[] NORMALIZED = new char[Character.MAX_VALUE + 1];
+    static {
+		for ( char c='0'; c<='9'; c++ ) {
+		    NORMALIZED[c] = c;
+		}
+		for ( char c='a'; c<='z'; c++ ) {
+		    NORMALIZED[c] = c;
+		    NORMALIZED[c-32] = c;
+		}
+		for ( int i=0; i<special_char.length; i++ ) {
+		    NORMALIZED[special_char[i]] = translation[i];
+		}
+    }
+
+
     public SimpleTokenizer( Reader reader ) {
     	this.reader = reader;
     }
@@ -84,23 +111,12 @@ public class SimpleTokenizer {
      */
 
     public static boolean normalize( char[] buf, int ptr ) {
-		char c = buf[ptr];
-		if (( c >= '0' && c <= '9' ) || ( c >= 'a' && c <= 'z' )) {
-		    return true;
-		}
-		else if ( c >= 'A' && c <= 'Z' ) {
-		    buf[ptr] = (char)(c+32);
-		    return true;
-		}
-		else {
-		    for ( int i=0; i<special_char.length; i++ ) {
-				if ( special_char[i] == c ) {
-				    buf[ptr] = translation[i];
-				    return true;
-				}
-		    }
+		char n = NORMALIZED[buf[ptr]];
+		if ( n == 0 ) {
 		    return false;
 		}
+		buf[ptr] = n;
+		return true;
     }
 
 
@@ -109,11 +125,11 @@ public class SimpleTokenizer {
      *  read, and @code{false} otherwise.
      */
     public boolean hasMoreTokens() throws IOException {
-		if ( !started_reading ) {
-		    nextTok = readToken();
-		    started_reading = true;
+		if ( !peeked ) {
+		    peekedResult = readToken();
+		    peeked = true;
 		}
-		return ( nextTok != null );
+		return peekedResult;
     }
     
 
@@ -122,97 +138,78 @@ public class SimpleTokenizer {
      *  are no more tokens.
      */
     public String nextToken() throws IOException { 
-		String s = null;
-		if ( !started_reading ) {
-		    s = readToken();
-		    if ( s != null ) {
-				s = s.replaceAll( "#", "" );
-				nextTok = readToken();
-		    }
-		    return s;
-		}
-		else {
-		    if ( nextTok != null ) {
-		    	s = nextTok.replaceAll( "#", "" );
-		    }
-		    nextTok = readToken();
-		    return s;
+		return nextTerm() ? new String( term, 0, termLength ) : null;
+    }
+
+
+    /**
+     *  Moves to the next token without creating a String for it. The
+     *  token is then in getTermBuffer()[0] .. getTermBuffer()[getTermLength()-1],
+     *  until the next call.
+     *
+     *  @return @code{false} if there are no more tokens.
+     */
+    public boolean nextTerm() throws IOException {
+		if ( peeked ) {
+		    peeked = false;
+		    return peekedResult;
 		}
+		return readToken();
+    }
+
+    /**  The characters of the current token. The array is reused.  */
+    public char[] getTermBuffer() {
+		return term;
+    }
+
+    /**  The length of the current token  */
+    public int getTermLength() {
+		return termLength;
     }
 
 
     /**
-     *  Reads the next token. 
+     *  Reads the next token into @code{term}. 
      */ 
-    private String readToken() throws IOException {
-		if ( started_reading && buf[ptr] == 0 ) {
-		    // No more tokens to be read
-		    return null;
-		}
-		if ( !started_reading ) {
-		    refillBuffer( 0 );
-		    started_reading = true;
-		}
-		String token_found = null;
-		while ( buf[ptr] != 0 ) {
-		    if ( tokenStart < 0 ) {
-				if ( !normalize( buf, ptr )) {
-				    // Skip whitespace etc.
-				    ptr++;
-				}
-				else {
-				    // A token starts here
-				    tokenStart = ptr++;
-				}
+    private boolean readToken() throws IOException {
+		termLength = 0;
+		boolean inToken = false;
+		while ( true ) {
+		    if ( ptr == limit && !refillBuffer() ) {
+				// The last token may end at the end of the input
+				return inToken;
 		    }
-		    else {
-				if ( normalize( buf, ptr )) {
-				    // We're in the middle of a token
-				    ptr++;
-				}
-				else {
-				    // End of token
-				    token_found = new String( buf, tokenStart, ptr-tokenStart );
-				    tokenStart = -1;
-				    ptr++;
+		    char n = NORMALIZED[buf[ptr++]];
+		    if ( n == 0 ) {
+				if ( inToken ) {
+				    return true;
 				}
 		    }
-		    if ( ptr == BUFFER_LENGTH ) {
-				// The buffer has been read, so refill it
-				if ( tokenStart >= 0 ) {
-				    // We're in the middle of a token. Copy the parts
-				    // of the token we have read already into the 
-				    // beginning of the buffer.
-				    java.lang.System.arraycopy( buf, tokenStart, buf, 0, BUFFER_LENGTH-tokenStart );
-				    refillBuffer( BUFFER_LENGTH-tokenStart );
-				    ptr = BUFFER_LENGTH-tokenStart;
-				    tokenStart = 0;
-				}
-				else {
-				    refillBuffer( 0 );
-				    ptr = 0;
+		    else {
+				inToken = true;
+				if ( n != '#' ) {
+				    if ( termLength == term.length ) {
+						term = Arrays.copyOf( term, termLength * 2 );
+				    }
+				    term[termLength++] = n;
 				}
 		    }
-		    if ( token_found != null ) {
-		    	return token_found;
-		    }
 		}
-		return null;
     }
 
 
     /**
-     *  Refills the buffer and adds end_of_file "\0" at the appropriate place.
+     *  Refills the buffer from the reader.
+     *
+     *  @return @code{false} at the end of the input.
      */
-    private void refillBuffer( int start ) throws IOException {
-		int chars_read = reader.read( buf, start, BUFFER_LENGTH-start );
-		if ( chars_read < BUFFER_LENGTH-start ) {
-		    buf[chars_read] = 0;
+    private boolean refillBuffer() throws IOException {
+		int chars_read = reader.read( buf, 0, BUFFER_LENGTH );
+		if ( chars_read <= 0 ) {
+		    return false;
 		}
+		ptr = 0;
+		limit = chars_read;
+		return true;
     }
 }
-
-
-
-
-
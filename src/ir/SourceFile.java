@@ -0,0 +1,193 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ *   The contents of a file to be indexed, read with a single open.
+ *
+ *   A file smaller than MAP_THRESHOLD is read into a buffer that each
+ *   thread reuses for all its files, and a larger one is memory-mapped.
+ *   Either way the file is closed again before read() returns, and its
+ *   type is told from the first bytes of the contents.
+ *
+ *   A SourceFile read into the thread's buffer is only valid until the
+ *   same thread reads the next one.
+ */
+public class SourceFile {
+
+    /** Files of this many bytes or more are memory-mapped. */
+    public static int MAP_THRESHOLD = 1 << 20;
+
+    /** The buffer of each thread for small files. */
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>();
+
+    private final ByteBuffer bytes;
+
+
+    private SourceFile( ByteBuffer bytes ) {
+    	this.bytes = bytes;
+    }
+
+    /**
+     *  Reads the file @code{f}.
+     */
+    public static SourceFile read( File f ) throws IOException {
+    	try ( FileChannel channel = FileChannel.open( f.toPath(), StandardOpenOption.READ )) {
+    		long size = channel.size();
+    		if ( size > Integer.MAX_VALUE ) {
+    			throw new IOException( "File too large: " + f );
+    		}
+    		if ( size >= MAP_THRESHOLD ) {
+    			// The mapping stays valid after the channel is closed
+    			return new SourceFile( channel.map( FileChannel.MapMode.READ_ONLY, 0, size ));
+    		}
+    		ByteBuffer buf = BUFFER.get();
+    		if ( buf == null || buf.capacity() < size ) {
+    			buf = ByteBuffer.allocate( Math.max( (int)size, 1 << 16 ));
+    			BUFFER.set( buf );
+    		}
+    		buf.clear();
+    		buf.limit( (int)size );
+    		while ( buf.hasRemaining() && channel.read( buf ) >= 0 ) {
+    			// The file may be shorter than its size said, if it is being written
+    		}
+    		buf.flip();
+    		return new SourceFile( buf );
+    	}
+    }
+
+    /**  True if the file starts like a PDF file  */
+    public boolean isPDF() {
+    	return bytes.limit() >= 4 && bytes.get( 0 ) == '%' && bytes.get( 1 ) == 'P'
+    		&& bytes.get( 2 ) == 'D' && bytes.get( 3 ) == 'F';
+    }
+
+    /**  The size of the file in bytes  */
+    public int size() {
+    	return bytes.limit();
+    }
+
+    /**
+     *  The contents of the file, in a buffer of its own that the caller
+     *  may move through.
+     */
+    public ByteBuffer getBytes() {
+    	return bytes.duplicate();
+    }
+
+    /**
+     *  Returns a stream of the contents of the file.
+     */
+    public InputStream openStream() {
+    	final ByteBuffer in = getBytes();
+    	return new InputStream() {
+    		public int read() {
+    			return in.hasRemaining() ? in.get() & 0xff : -1;
+    		}
+
+    		public int read( byte[] b, int off, int len ) {
+    			if ( len == 0 ) {
+    				return 0;
+    			}
+    			if ( !in.hasRemaining() ) {
+    				return -1;
+    			}
+    			int n = Math.min( len, in.remaining() );
+    			in.get( b, off, n );
+    			return n;
+    		}
+
+    		public int available() {
+    			return in.remaining();
+    		}
+    	};
+    }
+
+    /**
+     *  Returns a Reader of the contents of the file as UTF-8 text.
+     *  Malformed input is replaced, as a FileReader would.
+     */
+    public Reader openText() {
+    	return new DecodingReader( getBytes() );
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    /**
+     *   Decodes UTF-8 straight from the file's buffer into the array
+     *   the caller reads into.
+     */
+    private static class DecodingReader extends Reader {
+    	private final ByteBuffer in;
+    	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+    		.onMalformedInput( CodingErrorAction.REPLACE )
+    		.onUnmappableCharacter( CodingErrorAction.REPLACE );
+
+    	/** The second half of a surrogate pair that did not fit, or empty. */
+    	private final CharBuffer pending = CharBuffer.allocate( 2 );
+
+    	private boolean flushed = false;
+
+    	DecodingReader( ByteBuffer in ) {
+    		this.in = in;
+    		pending.flip();
+    	}
+
+    	public int read( char[] cbuf, int off, int len ) throws IOException {
+    		if ( len == 0 ) {
+    			return 0;
+    		}
+    		CharBuffer out = CharBuffer.wrap( cbuf, off, len );
+    		while ( pending.hasRemaining() && out.hasRemaining() ) {
+    			out.put( pending.get() );
+    		}
+    		decode( out );
+    		if ( out.position() == off && !flushed ) {
+    			// Only one char of room and a surrogate pair next
+    			pending.clear();
+    			decode( pending );
+    			pending.flip();
+    			while ( pending.hasRemaining() && out.hasRemaining() ) {
+    				out.put( pending.get() );
+    			}
+    		}
+    		int n = out.position() - off;
+    		return n == 0 ? -1 : n;
+    	}
+
+    	private void decode( CharBuffer out ) throws IOException {
+    		if ( flushed ) {
+    			return;
+    		}
+    		CoderResult result = decoder.decode( in, out, true );
+    		if ( result.isError() ) {
+    			result.throwException();
+    		}
+    		if ( result.isUnderflow() && decoder.flush( out ).isUnderflow() ) {
+    			flushed = true;
+    		}
+    	}
+
+    	public void close() {
+    	}
+    }
+}
@@ -0,0 +1,254 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.Arrays;
+
+
+/**
+ *   Assigns dense int termIDs 0, 1, 2, ... to terms, in the order they
+ *   are first added.
+ *
+ *   The characters of all terms are kept in one char[] and looked up
+ *   through an open addressing hash table, so a term can be looked up
+ *   straight from a tokenizer's buffer without creating a String.
+ *   Strings are only created when getTerm() asks for one.
+ *
+ *   A biword, two words that follow each other in a document, is a
+ *   term of its own: the two words with a SEPARATOR between them.
+ */
+public class TermDictionary {
+
+    /** Separates the words of a biword. No token contains it. */
+    public static final char SEPARATOR = ' ';
+
+    /** The characters of all terms, concatenated. */
+    private char[] chars = new char[256];
+    private int charsUsed = 0;
+
+    /** Term i is chars[start[i]] .. chars[start[i+1]-1]. */
+    private int[] start = new int[17];
+
+    private int[] hashes = new int[16];
+
+    /** The terms as Strings, created when first asked for. */
+    private String[] strings = new String[16];
+
+    /** Hash table of termIDs, -1 for empty slots. Its length is a power of two. */
+    private int[] table = newTable( 32 );
+
+    private int size = 0;
+
+    /** Where biwords are put together before they are looked up. */
+    private char[] pair = new char[32];
+
+
+    /**  Number of terms  */
+    public int size() {
+    	return size;
+    }
+
+    /**
+     *  Returns the termID of the term in buf[offset] .. buf[offset+length-1],
+     *  adding it if it is new.
+     */
+    public int add( char[] buf, int offset, int length ) {
+    	int hash = hash( buf, offset, length );
+    	int slot = find( buf, offset, length, hash );
+    	if ( table[slot] >= 0 ) {
+    		return table[slot];
+    	}
+    	if ( size == hashes.length ) {
+    		hashes = Arrays.copyOf( hashes, size * 2 );
+    		strings = Arrays.copyOf( strings, size * 2 );
+    		start = Arrays.copyOf( start, size * 2 + 1 );
+    	}
+    	if ( charsUsed + length > chars.length ) {
+    		chars = Arrays.copyOf( chars, Math.max( chars.length * 2, charsUsed + length ));
+    	}
+    	System.arraycopy( buf, offset, chars, charsUsed, length );
+    	charsUsed += length;
+    	int id = size++;
+    	start[size] = charsUsed;
+    	hashes[id] = hash;
+    	table[slot] = id;
+    	if ( size * 2 > table.length ) {
+    		rehash();
+    	}
+    	return id;
+    }
+
+    /**
+     *  Returns the termID of @code{term}, adding it if it is new.
+     */
+    public int add( String term ) {
+    	int id = get( term );
+    	if ( id < 0 ) {
+    		id = add( term.toCharArray(), 0, term.length() );
+    		strings[id] = term;
+    	}
+    	return id;
+    }
+
+    /**
+     *  Returns the termID in this dictionary of term @code{id} of
+     *  @code{from}, adding it if it is new.
+     */
+    public int add( TermDictionary from, int id ) {
+    	return add( from.chars, from.start[id], from.start[id+1] - from.start[id] );
+    }
+
+    /**
+     *  Returns the termID of the biword of terms @code{first} and
+     *  @code{second}, adding it if it is new.
+     */
+    public int addBiword( int first, int second ) {
+    	return add( pair, 0, pair( first, second ));
+    }
+
+    /**
+     *  Returns the termID of the biword of terms @code{first} and
+     *  @code{second}, or -1 if it is not in the dictionary.
+     */
+    public int getBiword( int first, int second ) {
+    	return get( pair, 0, pair( first, second ));
+    }
+
+    /**
+     *  Returns the biword of @code{first} followed by @code{second}.
+     */
+    public static String biword( String first, String second ) {
+    	return first + SEPARATOR + second;
+    }
+
+    /**  True if @code{term} is a biword  */
+    public static boolean isBiword( String term ) {
+    	return term.indexOf( SEPARATOR ) >= 0;
+    }
+
+    /**
+     *  Returns the termID of the term in buf[offset] .. buf[offset+length-1],
+     *  or -1 if it is not in the dictionary.
+     */
+    public int get( char[] buf, int offset, int length ) {
+    	return table[find( buf, offset, length, hash( buf, offset, length ))];
+    }
+
+    /**
+     *  Returns the termID of @code{term}, or -1 if it is not in the dictionary.
+     */
+    public int get( String term ) {
+    	int hash = mix( term.hashCode() );
+    	int mask = table.length - 1;
+    	for ( int slot = hash & mask; ; slot = (slot + 1) & mask ) {
+    		int id = table[slot];
+    		if ( id < 0 || (hashes[id] == hash && equals( id, term ))) {
+    			return id;
+    		}
+    	}
+    }
+
+    /**
+     *  Returns term @code{id} as a String.
+     */
+    public String getTerm( int id ) {
+    	if ( strings[id] == null ) {
+    		strings[id] = new String( chars, start[id], start[id+1] - start[id] );
+    	}
+    	return strings[id];
+    }
+
+
+    /**
+     *  Returns the slot of the term, or the empty slot where it would go.
+     */
+    private int find( char[] buf, int offset, int length, int hash ) {
+    	int mask = table.length - 1;
+    	for ( int slot = hash & mask; ; slot = (slot + 1) & mask ) {
+    		int id = table[slot];
+    		if ( id < 0 || (hashes[id] == hash && equals( id, buf, offset, length ))) {
+    			return slot;
+    		}
+    	}
+    }
+
+    /**
+     *  Puts the biword of terms @code{first} and @code{second} into
+     *  pair, and returns its length.
+     */
+    private int pair( int first, int second ) {
+    	int a = start[first+1] - start[first];
+    	int b = start[second+1] - start[second];
+    	if ( a + b + 1 > pair.length ) {
+    		pair = new char[(a + b + 1) * 2];
+    	}
+    	System.arraycopy( chars, start[first], pair, 0, a );
+    	pair[a] = SEPARATOR;
+    	System.arraycopy( chars, start[second], pair, a + 1, b );
+    	return a + b + 1;
+    }
+
+    private boolean equals( int id, char[] buf, int offset, int length ) {
+    	int s = start[id];
+    	if ( start[id+1] - s != length ) {
+    		return false;
+    	}
+    	for ( int i=0; i<length; i++ ) {
+    		if ( chars[s+i] != buf[offset+i] ) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+    private boolean equals( int id, String term ) {
+    	int s = start[id];
+    	if ( start[id+1] - s != term.length() ) {
+    		return false;
+    	}
+    	for ( int i=0; i<term.length(); i++ ) {
+    		if ( chars[s+i] != term.charAt( i )) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+    private void rehash() {
+    	table = newTable( table.length * 2 );
+    	int mask = table.length - 1;
+    	for ( int id=0; id<size; id++ ) {
+    		int slot = hashes[id] & mask;
+    		while ( table[slot] >= 0 ) {
+    			slot = (slot + 1) & mask;
+    		}
+    		table[slot] = id;
+    	}
+    }
+
+    private static int[] newTable( int length ) {
+    	int[] t = new int[length];
+    	Arrays.fill( t, -1 );
+    	return t;
+    }
+
+    /**
+     *  The same hash as String.hashCode(), mixed so that similar
+     *  terms spread over the table.
+     */
+    private static int hash( char[] buf, int offset, int length ) {
+    	int h = 0;
+    	for ( int i=0; i<length; i++ ) {
+    		h = 31 * h + buf[offset+i];
+    	}
+    	return mix( h );
+    }
+
+    private static int mix( int h ) {
+    	h *= 0x9E3779B9;
+    	return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,256 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.pdfbox.util.PDFTextStripper;
+
+
+/**
+ *   Keeps the text extracted from PDF files on disk, so that indexing
+ *   the same PDF again does not have to parse it.
+ *
+ *   The text of a file is found by the SHA-256 hash of its contents
+ *   together with VERSION, which names the PDFBox release and how the
+ *   text is extracted. A renamed or copied file hits the cache, and
+ *   changing the extraction makes all older entries unreachable, so
+ *   they are evicted in time. Each entry is a gzipped file in the
+ *   cache directory, which is read and written as a stream, so that
+ *   the text never has to be held in memory as a whole.
+ *
+ *   The cache holds at most MAX_BYTES. When it grows beyond that, the
+ *   entries that were used least recently are deleted until it is
+ *   back under 90% of the limit. Every hit touches the entry's
+ *   modification time, which is what "recently" goes by.
+ *
+ *   Several workers may use the cache at once.
+ */
+public class TextCache {
+
+    /** Where the cache is kept, unless told otherwise. */
+    public static String CACHE_DIR = "textcache";
+
+    /** Size of the cache on disk, in bytes. */
+    public static long MAX_BYTES = 1L << 30;
+
+    /**
+     *  Names the extraction. Change it whenever the text extracted
+     *  from a PDF would change.
+     */
+    public static final String VERSION = "pdfbox-" + PDFTextStripper.class.getPackage().getImplementationVersion() + "/1";
+
+    private static final String SUFFIX = ".txt.gz";
+
+    private final File dir;
+
+    /** Bytes in the cache, or -1 until the directory has been looked at. */
+    private long bytes = -1;
+
+    private long hits = 0;
+    private long misses = 0;
+
+
+    public TextCache( File dir ) {
+    	this.dir = dir;
+    }
+
+    /**
+     *  The key of a file with @code{contents}.
+     */
+    public static String key( ByteBuffer contents ) {
+    	try {
+    		MessageDigest md = MessageDigest.getInstance( "SHA-256" );
+    		md.update( VERSION.getBytes( StandardCharsets.UTF_8 ));
+    		md.update( (byte)0 );
+    		md.update( contents );
+    		byte[] hash = md.digest();
+    		StringBuilder hex = new StringBuilder();
+    		for ( byte b : hash ) {
+    			hex.append( Character.forDigit( (b >> 4) & 0xf, 16 )).append( Character.forDigit( b & 0xf, 16 ));
+    		}
+    		return hex.toString();
+    	}
+    	catch ( NoSuchAlgorithmException e ) {
+    		// Every Java runtime has SHA-256
+    		throw new IllegalStateException( e );
+    	}
+    }
+
+    /**
+     *  Opens the text cached under @code{key}, or returns null if
+     *  there is none.
+     */
+    public Reader open( String key ) {
+    	File f = file( key );
+    	try {
+    		// An entry evicted meanwhile stays readable once it is open
+    		Reader reader = new InputStreamReader( new GZIPInputStream( new FileInputStream( f ), 1 << 16 ), StandardCharsets.UTF_8 );
+    		f.setLastModified( System.currentTimeMillis() );
+    		synchronized ( this ) {
+    			hits++;
+    		}
+    		return reader;
+    	}
+    	catch ( IOException e ) {
+    		synchronized ( this ) {
+    			misses++;
+    		}
+    		return null;
+    	}
+    }
+
+    /**
+     *  Starts a new entry for @code{key}. The text written to it is
+     *  cached when it is closed, unless it is discarded.
+     */
+    public Entry create( String key ) throws IOException {
+    	if ( !dir.isDirectory() && !dir.mkdirs() ) {
+    		throw new IOException( "Cannot create cache directory " + dir );
+    	}
+    	return new Entry( key, File.createTempFile( "text", ".tmp", dir ));
+    }
+
+    /**
+     *   An entry being written. Its text goes to a temporary file,
+     *   which replaces the entry only when it is complete, so readers
+     *   never see a part of it.
+     */
+    public class Entry extends Writer {
+    	private final String key;
+    	private final File temp;
+    	private final Writer out;
+    	private boolean closed = false;
+
+    	private Entry( String key, File temp ) throws IOException {
+    		this.key = key;
+    		this.temp = temp;
+    		out = new OutputStreamWriter( new GZIPOutputStream( new FileOutputStream( temp ), 1 << 16 ), StandardCharsets.UTF_8 );
+    	}
+
+    	public void write( char[] cbuf, int off, int len ) throws IOException {
+    		out.write( cbuf, off, len );
+    	}
+
+    	public void flush() throws IOException {
+    		out.flush();
+    	}
+
+    	/**
+    	 *  Adds the entry to the cache, and evicts old entries if the
+    	 *  cache has grown too large.
+    	 */
+    	public void close() throws IOException {
+    		if ( closed ) {
+    			return;
+    		}
+    		closed = true;
+    		try {
+    			out.close();
+    			long size = temp.length() - file( key ).length();
+    			Files.move( temp.toPath(), file( key ).toPath(),
+    						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    			added( size );
+    		}
+    		finally {
+    			temp.delete();
+    		}
+    	}
+
+    	/**
+    	 *  Drops the entry without adding it to the cache.
+    	 */
+    	public void discard() {
+    		if ( closed ) {
+    			return;
+    		}
+    		closed = true;
+    		try {
+    			out.close();
+    		}
+    		catch ( IOException e ) {
+    			// It is deleted anyway
+    		}
+    		temp.delete();
+    	}
+    }
+
+    /**  Number of lookups that found the text  */
+    public synchronized long getHits() {
+    	return hits;
+    }
+
+    /**  Number of lookups that found nothing  */
+    public synchronized long getMisses() {
+    	return misses;
+    }
+
+
+    /* ----------------------------------------------- */
+
+
+    private File file( String key ) {
+    	return new File( dir, key + SUFFIX );
+    }
+
+    /**
+     *  Counts @code{size} new bytes, and evicts the least recently used
+     *  entries if that makes the cache too large.
+     */
+    private synchronized void added( long size ) {
+    	if ( bytes < 0 ) {
+    		bytes = 0;
+    		for ( File f : entries() ) {
+    			bytes += f.length();
+    		}
+    	}
+    	else {
+    		bytes += size;
+    	}
+    	if ( bytes <= MAX_BYTES ) {
+    		return;
+    	}
+    	File[] files = entries();
+    	// Hits may touch the files while they are sorted
+    	final HashMap<File,Long> used = new HashMap<File,Long>();
+    	for ( File f : files ) {
+    		used.put( f, f.lastModified() );
+    	}
+    	Arrays.sort( files, new Comparator<File>() {
+    		public int compare( File a, File b ) {
+    			return Long.compare( used.get( a ), used.get( b ));
+    		}
+    	});
+    	for ( int i=0; i<files.length && bytes > MAX_BYTES / 10 * 9; i++ ) {
+    		long length = files[i].length();
+    		if ( files[i].delete() ) {
+    			bytes -= length;
+    		}
+    	}
+    }
+
+    private File[] entries() {
+    	File[] files = dir.listFiles( (d, name) -> name.endsWith( SUFFIX ));
+    	return files == null ? new File[0] : files;
+    }
+}
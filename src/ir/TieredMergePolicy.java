@@ -0,0 +1,82 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+/**
+ *   Decides which segments of a SegmentedIndex to merge.
+ *
+ *   Segments are grouped into tiers by their number of live documents:
+ *   tier 0 holds segments below FLUSH_DOCUMENTS * SEGMENTS_PER_TIER,
+ *   and each tier above holds segments SEGMENTS_PER_TIER times larger.
+ *   Once a tier has SEGMENTS_PER_TIER segments they are merged into one
+ *   segment of the next tier, so every document is merged about once
+ *   per tier and the number of segments grows with the logarithm of
+ *   the number of documents. Segments are only merged with segments
+ *   of the same shard. A segment whose share of deleted
+ *   documents exceeds MAX_DELETED_RATIO is rewritten on its own, which
+ *   drops the deleted documents for good.
+ */
+public class TieredMergePolicy {
+
+    /** Number of segments in a tier that triggers a merge. */
+    public static int SEGMENTS_PER_TIER = 10;
+
+    /** Share of deleted documents above which a segment is rewritten. */
+    public static double MAX_DELETED_RATIO = 0.25;
+
+
+    /**
+     *  Returns the segments of @code{snapshot} to merge next, or null
+     *  if none need merging.
+     */
+    public Index[] findMerge( IndexSnapshot snapshot ) {
+    	Index[] segments = snapshot.getSegments();
+    	// The segments of each shard, by tier
+    	HashMap<Integer,ArrayList<ArrayList<Index>>> shards = new HashMap<Integer,ArrayList<ArrayList<Index>>>();
+    	for ( int s=0; s<segments.length; s++ ) {
+    		ArrayList<ArrayList<Index>> tiers = shards.get( snapshot.getShard( s ));
+    		if ( tiers == null ) {
+    			tiers = new ArrayList<ArrayList<Index>>();
+    			shards.put( snapshot.getShard( s ), tiers );
+    		}
+    		int t = tier( segments[s].getDocuments().size() - snapshot.getDeletedCount( s ));
+    		while ( tiers.size() <= t ) {
+    			tiers.add( new ArrayList<Index>() );
+    		}
+    		tiers.get( t ).add( segments[s] );
+    	}
+    	for ( ArrayList<ArrayList<Index>> tiers : shards.values() ) {
+    		for ( ArrayList<Index> tier : tiers ) {
+    			if ( tier.size() >= SEGMENTS_PER_TIER ) {
+    				return tier.subList( 0, SEGMENTS_PER_TIER ).toArray( new Index[SEGMENTS_PER_TIER] );
+    			}
+    		}
+    	}
+    	for ( int s=0; s<segments.length; s++ ) {
+    		if ( snapshot.getDeletedCount( s ) > MAX_DELETED_RATIO * segments[s].getDocuments().size() ) {
+    			return new Index[] { segments[s] };
+    		}
+    	}
+    	return null;
+    }
+
+    /**
+     *  The tier of a segment with @code{size} live documents.
+     */
+    private static int tier( int size ) {
+    	int t = 0;
+    	long limit = (long)Math.max( 1, SegmentedIndex.FLUSH_DOCUMENTS ) * SEGMENTS_PER_TIER;
+    	while ( size >= limit ) {
+    		t++;
+    		limit *= SEGMENTS_PER_TIER;
+    	}
+    	return t;
+    }
+}
@@ -0,0 +1,117 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+/**
+ *   Keeps the k best scored documents seen so far in a bounded
+ *   min-heap, so that ranked retrieval never has to sort the full
+ *   list of matching documents.
+ *
+ *   Documents are ordered by descending score, and equal scores by
+ *   ascending docID, which is the same order as PostingsList.sort().
+ */
+public class TopKCollector {
+
+    /** The maximum number of documents kept. */
+    private final int k;
+
+    /** The heap, worst document at index 0. */
+    private final int[] docIDs;
+    private final double[] scores;
+
+    /** Number of documents in the heap. */
+    private int size = 0;
+
+
+    public TopKCollector( int k ) {
+    	this.k = k;
+    	docIDs = new int[k];
+    	scores = new double[k];
+    }
+
+    /**
+     *  Offers a scored document to the collector.
+     */
+    public void collect( int docID, double score ) {
+    	if (size < k) {
+    		docIDs[size] = docID;
+    		scores[size] = score;
+    		siftUp(size++);
+    	}
+    	else if (k > 0 && worse(docIDs[0], scores[0], docID, score)) {
+    		docIDs[0] = docID;
+    		scores[0] = score;
+    		siftDown(0);
+    	}
+    }
+
+    /**
+     *  Returns true when the collector holds k documents, so that a
+     *  document must beat threshold() to get in.
+     */
+    public boolean isFull() {
+    	return size == k;
+    }
+
+    /**
+     *  The score of the worst document kept, or negative infinity
+     *  while the collector is not full.
+     */
+    public double threshold() {
+    	return isFull() && k > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     *  Returns the collected documents as a new PostingsList,
+     *  best first.
+     */
+    public PostingsList toPostingsList() {
+    	PostingsList result = new PostingsList();
+    	for (int i = 0; i < size; i++) {
+    		result.add(docIDs[i], scores[i]);
+    	}
+    	result.sort();
+    	return result;
+    }
+
+    /** Whether document 1 ranks below document 2. */
+    private static boolean worse( int doc1, double score1, int doc2, double score2 ) {
+    	return score1 < score2 || (score1 == score2 && doc1 > doc2);
+    }
+
+    private void siftUp( int i ) {
+    	while (i > 0) {
+    		int parent = (i - 1) / 2;
+    		if (!worse(docIDs[i], scores[i], docIDs[parent], scores[parent])) {
+    			break;
+    		}
+    		swap(i, parent);
+    		i = parent;
+    	}
+    }
+
+    private void siftDown( int i ) {
+    	while (true) {
+    		int child = 2 * i + 1;
+    		if (child >= size) {
+    			break;
+    		}
+    		if (child + 1 < size && worse(docIDs[child+1], scores[child+1], docIDs[child], scores[child])) {
+    			child++;
+    		}
+    		if (!worse(docIDs[child], scores[child], docIDs[i], scores[i])) {
+    			break;
+    		}
+    		swap(i, child);
+    		i = child;
+    	}
+    }
+
+    private void swap( int i, int j ) {
+    	int d = docIDs[i]; docIDs[i] = docIDs[j]; docIDs[j] = d;
+    	double s = scores[i]; scores[i] = scores[j]; scores[j] = s;
+    }
+}
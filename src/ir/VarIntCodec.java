@@ -0,0 +1,49 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ */  
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *   Stores the gaps between values as variable-byte ints, 7 bits
+ *   per byte.
+ */
+public class VarIntCodec implements PostingsCodec {
+
+    public int getId() {
+    	return VARINT;
+    }
+
+    public String getName() {
+    	return "varint";
+    }
+
+    public void encode( int[] values, int offset, int n, ByteArrayOutputStream out ) {
+    	int last = 0;
+    	for ( int i=0; i<n; i++ ) {
+    		Codecs.writeVarInt( values[offset+i] - last, out );
+    		last = values[offset+i];
+    	}
+    }
+
+    public int decode( byte[] in, int pos, int[] values, int offset, int n ) {
+    	int last = 0;
+    	for ( int i=0; i<n; i++ ) {
+    		int v = 0;
+    		int shift = 0;
+    		byte b;
+    		do {
+    			b = in[pos++];
+    			v |= ( b & 0x7F ) << shift;
+    			shift += 7;
+    		} while ( b < 0 );
+    		last += v;
+    		values[offset+i] = last;
+    	}
+    	return pos;
+    }
+}